@@ -137,7 +137,7 @@ public class HikariDataExtension implements DataExtension {
   @StringProvider(text = "Owned shops", description = "How many shops created and exists by this player", iconName = "hashtable", iconColor = Color.GREEN, priority = 100, showInPlayerTable = true)
   public String shopCreatedPlayer(final UUID playerUUID) {
 
-    return String.valueOf(main.getQuickShop().getShopManager().getAllShops(playerUUID).size());
+    return String.valueOf(main.getQuickShop().getShopManager().getOwnedShops(playerUUID).size());
   }
 
   @TableProvider(tableColor = Color.BLUE)
@@ -179,7 +179,7 @@ public class HikariDataExtension implements DataExtension {
             .columnTwo("Price", Icon.called("money-bill-wave").build())
             .columnThree("Type", Icon.called("code-branch").build())
             .columnFour("Location", Icon.called("location-arrow").build());
-    for(final Shop shop : main.getQuickShop().getShopManager().getAllShops(playerUUID)) {
+    for(final Shop shop : main.getQuickShop().getShopManager().getOwnedShops(playerUUID)) {
 
       final String item = dataUtil.getItemName(shop.getItem()) + " x" + shop.getShopStackingAmount();
       String price = df.format(shop.getPrice());
@@ -17,6 +17,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
@@ -81,16 +82,15 @@ public class MetricQuery {
 
   // Use LinkedHashMap forced because we need keep the order.
   public @NotNull LinkedHashMap<ShopMetricRecord, DataRecord> mapToDataRecord(@NotNull final List<ShopMetricRecord> metricRecords) throws ExecutionException, InterruptedException {
-    // map ShopMetricRecord#getShopId to DataRecord with blocking future
+    // map ShopMetricRecord#getShopId to DataRecord with blocking future, resolved in bulk to avoid a query per record
+    final Map<Long, DataRecord> shopDataRecords = databaseHelper.getShopDataRecords(metricRecords.stream().map(ShopMetricRecord::getShopId).toList()).get();
     final LinkedHashMap<ShopMetricRecord, DataRecord> dataRecords = new LinkedHashMap<>();
     for(final ShopMetricRecord metricRecord : metricRecords) {
-      final long shopId = metricRecord.getShopId();
-      final Long dataId = databaseHelper.locateShopDataId(shopId).get();
-      if(dataId == null) {
-        Log.debug("dataId is null for shopId " + shopId);
+      final DataRecord dataRecord = shopDataRecords.get(metricRecord.getShopId());
+      if(dataRecord == null) {
+        Log.debug("dataRecord is null for shopId " + metricRecord.getShopId());
         continue;
       }
-      final DataRecord dataRecord = databaseHelper.getDataRecord(dataId).get();
       dataRecords.put(metricRecord, dataRecord);
     }
     return dataRecords;
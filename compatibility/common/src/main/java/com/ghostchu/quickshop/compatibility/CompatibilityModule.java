@@ -34,31 +34,14 @@ public abstract class CompatibilityModule extends JavaPlugin implements Listener
 
   public List<Shop> getShops(@NotNull final String worldName, final int minX, final int minZ, final int maxX, final int maxZ) {
 
-    final List<Shop> shopsList = new ArrayList<>();
-    for(int x = minX >> 4; x <= maxX >> 4; x++) {
-      for(int z = minZ >> 4; z <= maxZ >> 4; z++) {
-        final Map<Location, Shop> shops = this.api.getShopManager().getShops(worldName, x, z);
-        if(shops != null) {
-          shopsList.addAll(shops.values());
-        }
-      }
-    }
     final BoundingBox boundingBox = new BoundingBox(minX, Integer.MIN_VALUE, minZ, maxX, Integer.MAX_VALUE, maxZ);
-    return shopsList.stream().filter(s->boundingBox.contains(s.getLocation().toVector())).toList();
+    return this.api.getShopManager().queryRegion(worldName, boundingBox);
   }
 
   public List<Shop> getShops(@NotNull final String worldName, final int chunkX, final int chunkZ) {
 
-    final List<Shop> shopsList = new ArrayList<>();
-    for(int x = chunkX; x <= chunkX; x++) {
-      for(int z = chunkZ; z <= chunkZ; z++) {
-        final Map<Location, Shop> shops = this.api.getShopManager().getShops(worldName, x, z);
-        if(shops != null) {
-          shopsList.addAll(shops.values());
-        }
-      }
-    }
-    return shopsList;
+    final Map<Location, Shop> shops = this.api.getShopManager().getShops(worldName, chunkX, chunkZ);
+    return shops == null? new ArrayList<>() : new ArrayList<>(shops.values());
   }
 
   @Override
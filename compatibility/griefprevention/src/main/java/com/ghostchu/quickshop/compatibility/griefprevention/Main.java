@@ -21,7 +21,6 @@ import me.ryanhamshire.GriefPrevention.events.ClaimExpirationEvent;
 import me.ryanhamshire.GriefPrevention.events.ClaimResizeEvent;
 import me.ryanhamshire.GriefPrevention.events.TrustChangedEvent;
 import org.bukkit.Bukkit;
-import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
@@ -33,7 +32,6 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 public final class Main extends CompatibilityModule implements Listener {
@@ -109,18 +107,26 @@ public final class Main extends CompatibilityModule implements Listener {
     handleMainClaimUnclaimedOrExpired(event.getClaim(), "[SHOP DELETE] GP Integration: Single delete (Claim Expired) #");
   }
 
+  // Only query the shops in the claim boundary through the chunk index, avoid loading the chunks
+  // that Claim#getChunks does
+  @NotNull
+  private List<Shop> getShopsInClaim(@NotNull final Claim claim) {
+
+    final Location lesser = claim.getLesserBoundaryCorner();
+    final Location greater = claim.getGreaterBoundaryCorner();
+    if(lesser.getWorld() == null) {
+      return Collections.emptyList();
+    }
+    return getShops(lesser.getWorld().getName(), lesser.getBlockX(), lesser.getBlockZ(), greater.getBlockX() + 1, greater.getBlockZ() + 1);
+  }
+
   // If it is the main claim, then we will delete all the shops that were inside of it.
   private void handleMainClaimUnclaimedOrExpired(final Claim claim, final String logMessage) {
 
-    for(final Chunk chunk : claim.getChunks()) {
-      final Map<Location, Shop> shops = getApi().getShopManager().getShops(chunk);
-      if(shops != null) {
-        for(final Shop shop : shops.values()) {
-          if(claim.contains(shop.getLocation(), false, false)) {
-            getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [System] Claim/SubClaim Unclaimed/Expired: " + logMessage, this.getName(), shop), shop.saveToInfoStorage()));
-            getApi().getShopManager().deleteShop(shop);
-          }
-        }
+    for(final Shop shop : getShopsInClaim(claim)) {
+      if(claim.contains(shop.getLocation(), false, false)) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [System] Claim/SubClaim Unclaimed/Expired: " + logMessage, this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
       }
     }
   }
@@ -130,16 +136,11 @@ public final class Main extends CompatibilityModule implements Listener {
   // A shop will be removed if the old claim contains it but the new claim doesn't.
   private void handleMainClaimResized(final Claim oldClaim, final Claim newClaim) {
 
-    for(final Chunk chunk : oldClaim.getChunks()) {
-      final Map<Location, Shop> shops = getApi().getShopManager().getShops(chunk);
-      if(shops != null) {
-        for(final Shop shop : shops.values()) {
-          if(oldClaim.contains(shop.getLocation(), false, false) &&
-             !newClaim.contains(shop.getLocation(), false, false)) {
-            getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] Claim Resized: ", this.getName(), shop), shop.saveToInfoStorage()));
-            getApi().getShopManager().deleteShop(shop);
-          }
-        }
+    for(final Shop shop : getShopsInClaim(oldClaim)) {
+      if(oldClaim.contains(shop.getLocation(), false, false) &&
+         !newClaim.contains(shop.getLocation(), false, false)) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] Claim Resized: ", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
       }
     }
   }
@@ -156,17 +157,12 @@ public final class Main extends CompatibilityModule implements Listener {
 
   private void handleSubClaimResizedHelper(final Claim claimVerifyChunks, final Claim claimVerifyShop) {
 
-    for(final Chunk chunk : claimVerifyChunks.getChunks()) {
-      final Map<Location, Shop> shops = getApi().getShopManager().getShops(chunk);
-      if(shops != null) {
-        for(final Shop shop : shops.values()) {
-          if(!claimVerifyChunks.getOwnerID().equals(shop.getOwner().getUniqueId()) &&
-             claimVerifyChunks.contains(shop.getLocation(), false, false) &&
-             !claimVerifyShop.contains(shop.getLocation(), false, false)) {
-            getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] SubClaim Resized: ", this.getName(), shop), shop.saveToInfoStorage()));
-            getApi().getShopManager().deleteShop(shop);
-          }
-        }
+    for(final Shop shop : getShopsInClaim(claimVerifyChunks)) {
+      if(!claimVerifyChunks.getOwnerID().equals(shop.getOwner().getUniqueId()) &&
+         claimVerifyChunks.contains(shop.getLocation(), false, false) &&
+         !claimVerifyShop.contains(shop.getLocation(), false, false)) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] SubClaim Resized: ", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
       }
     }
   }
@@ -197,25 +193,19 @@ public final class Main extends CompatibilityModule implements Listener {
     if(event.isGiven()) {
       return;
     }
-    for(final Chunk chunk : claim.getChunks()) {
-      final Map<Location, Shop> shops = getApi().getShopManager().getShops(chunk);
-      if(shops == null) {
+    for(final Shop shop : getShopsInClaim(claim)) {
+      if(claim.getOwnerID().equals(shop.getOwner().getUniqueId())) {
         continue;
       }
-      for(final Shop shop : shops.values()) {
-        if(claim.getOwnerID().equals(shop.getOwner().getUniqueId())) {
-          continue;
-        }
-        if(event.getIdentifier().equals(shop.getOwner().getUniqueIdIfRealPlayer().orElse(CommonUtil.getNilUniqueId()).toString())) {
-          getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(event.getChanger()), String.format("[%s Integration]Shop %s deleted caused by [Single] Claim/SubClaim Trust Changed", this.getName(), shop), shop.saveToInfoStorage()));
-          getApi().getShopManager().deleteShop(shop);
-        } else if(event.getIdentifier().contains(shop.getOwner().getUniqueIdIfRealPlayer().orElse(CommonUtil.getNilUniqueId()).toString())) {
-          getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(event.getChanger()), String.format("[%s Integration]Shop %s deleted caused by [Group] Claim/SubClaim Trust Changed", this.getName(), shop), shop.saveToInfoStorage()));
-          getApi().getShopManager().deleteShop(shop);
-        } else if("all".equals(event.getIdentifier()) || "public".equals(event.getIdentifier())) {
-          getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(event.getChanger()), String.format("[%s Integration]Shop %s deleted caused by [All/Public] Claim/SubClaim Trust Changed", this.getName(), shop), shop.saveToInfoStorage()));
-          getApi().getShopManager().deleteShop(shop);
-        }
+      if(event.getIdentifier().equals(shop.getOwner().getUniqueIdIfRealPlayer().orElse(CommonUtil.getNilUniqueId()).toString())) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(event.getChanger()), String.format("[%s Integration]Shop %s deleted caused by [Single] Claim/SubClaim Trust Changed", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
+      } else if(event.getIdentifier().contains(shop.getOwner().getUniqueIdIfRealPlayer().orElse(CommonUtil.getNilUniqueId()).toString())) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(event.getChanger()), String.format("[%s Integration]Shop %s deleted caused by [Group] Claim/SubClaim Trust Changed", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
+      } else if("all".equals(event.getIdentifier()) || "public".equals(event.getIdentifier())) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(event.getChanger()), String.format("[%s Integration]Shop %s deleted caused by [All/Public] Claim/SubClaim Trust Changed", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
       }
     }
   }
@@ -239,16 +229,11 @@ public final class Main extends CompatibilityModule implements Listener {
   // But we will remove all the others.
   private void handleSubClaimUnclaimed(final Claim subClaim) {
 
-    for(final Chunk chunk : subClaim.getChunks()) {
-      final Map<Location, Shop> shops = getApi().getShopManager().getShops(chunk);
-      if(shops != null) {
-        for(final Shop shop : shops.values()) {
-          if(!subClaim.getOwnerID().equals(shop.getOwner().getUniqueId()) &&
-             subClaim.contains(shop.getLocation(), false, false)) {
-            getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] SubClaim Unclaimed", this.getName(), shop), shop.saveToInfoStorage()));
-            getApi().getShopManager().deleteShop(shop);
-          }
-        }
+    for(final Shop shop : getShopsInClaim(subClaim)) {
+      if(!subClaim.getOwnerID().equals(shop.getOwner().getUniqueId()) &&
+         subClaim.contains(shop.getLocation(), false, false)) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] SubClaim Unclaimed", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
       }
     }
   }
@@ -305,16 +290,11 @@ public final class Main extends CompatibilityModule implements Listener {
     if(event.getClaim().parent == null) {
       return;
     }
-    for(final Chunk chunk : event.getClaim().getChunks()) {
-      final Map<Location, Shop> shops = getApi().getShopManager().getShops(chunk);
-      if(shops != null) {
-        for(final Shop shop : shops.values()) {
-          if(!event.getClaim().getOwnerID().equals(shop.getOwner().getUniqueId()) &&
-             event.getClaim().contains(shop.getLocation(), false, false)) {
-            getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] SubClaim Created", this.getName(), shop), shop.saveToInfoStorage()));
-            getApi().getShopManager().deleteShop(shop);
-          }
-        }
+    for(final Shop shop : getShopsInClaim(event.getClaim())) {
+      if(!event.getClaim().getOwnerID().equals(shop.getOwner().getUniqueId()) &&
+         event.getClaim().contains(shop.getLocation(), false, false)) {
+        getApi().logEvent(new ShopRemoveLog(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "GriefPrevention", false), String.format("[%s Integration]Shop %s deleted caused by [Single] SubClaim Created", this.getName(), shop), shop.saveToInfoStorage()));
+        getApi().getShopManager().deleteShop(shop);
       }
     }
   }
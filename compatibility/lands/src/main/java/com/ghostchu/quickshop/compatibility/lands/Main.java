@@ -23,6 +23,8 @@ import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -91,31 +93,30 @@ public final class Main extends CompatibilityModule {
   }
 
   private void deleteShopInLand(final Land land, final UUID target) {
-    //Getting all shop with world-chunk-shop mapping
+    //Matching the chunks of land from the world-chunk-shop mapping
+    final List<ShopChunk> landChunks = new ArrayList<>();
     for(final Map.Entry<String, Map<ShopChunk, Map<Location, Shop>>> entry : getApi().getShopManager().getShops().entrySet()) {
-      //Matching world
       final World world = getServer().getWorld(entry.getKey());
-      if(world != null) {
-        //Matching chunk
-        for(final Map.Entry<ShopChunk, Map<Location, Shop>> chunkedShopEntry : entry.getValue().entrySet()) {
-          final ShopChunk shopChunk = chunkedShopEntry.getKey();
-          if(land.hasChunk(world, shopChunk.getX(), shopChunk.getZ())) {
-            //Matching Owner and delete it
-            final Map<Location, Shop> shops = chunkedShopEntry.getValue();
-            for(final Shop shop : shops.values()) {
-              final UUID owner = shop.getOwner().getUniqueIdIfRealPlayer().orElse(null);
-              if(owner == null) {
-                continue;
-              }
-              if(target.equals(owner)) {
-                recordDeletion(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "Lands", false), shop, "Lands: shop deleted because owner lost permission");
-                Util.mainThreadRun(()->getApi().getShopManager().deleteShop(shop));
-              }
-            }
-          }
+      if(world == null) {
+        continue;
+      }
+      for(final ShopChunk shopChunk : entry.getValue().keySet()) {
+        if(land.hasChunk(world, shopChunk.getX(), shopChunk.getZ())) {
+          landChunks.add(shopChunk);
         }
       }
     }
+    //Matching Owner and delete it
+    for(final Shop shop : getApi().getShopManager().queryChunks(landChunks)) {
+      final UUID owner = shop.getOwner().getUniqueIdIfRealPlayer().orElse(null);
+      if(owner == null) {
+        continue;
+      }
+      if(target.equals(owner)) {
+        recordDeletion(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "Lands", false), shop, "Lands: shop deleted because owner lost permission");
+        Util.mainThreadRun(()->getApi().getShopManager().deleteShop(shop));
+      }
+    }
   }
 
   @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -30,6 +30,7 @@ import com.ghostchu.quickshop.obj.QUserImpl;
 import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.logger.Log;
 import com.palmergames.bukkit.towny.TownyAPI;
+import com.palmergames.bukkit.towny.TownySettings;
 import com.palmergames.bukkit.towny.event.PlotClearEvent;
 import com.palmergames.bukkit.towny.event.TownRemoveResidentEvent;
 import com.palmergames.bukkit.towny.event.town.TownKickEvent;
@@ -52,6 +53,7 @@ import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.util.BoundingBox;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -247,11 +249,11 @@ public final class Main extends CompatibilityModule implements Listener {
   }
 
   public void purgeShops(@NotNull final WorldCoord worldCoord, @Nullable final UUID owner, @Nullable final UUID deleter, @NotNull final String reason, final boolean overrideOwner) {
-    //Getting all shop with world-chunk-shop mapping
-    for(final Shop shop : api.getShopManager().getAllShops()) {
-      if(!Objects.equals(shop.getLocation().getWorld(), worldCoord.getBukkitWorld())) {
-        continue;
-      }
+    //Only query the shops inside the town block through the chunk index
+    final int townBlockSize = TownySettings.getTownBlockSize();
+    final BoundingBox townBlockBox = new BoundingBox(worldCoord.getX() * townBlockSize, Integer.MIN_VALUE, worldCoord.getZ() * townBlockSize,
+                                                     (worldCoord.getX() + 1) * townBlockSize, Integer.MAX_VALUE, (worldCoord.getZ() + 1) * townBlockSize);
+    for(final Shop shop : api.getShopManager().queryRegion(worldCoord.getWorldName(), townBlockBox)) {
       if(WorldCoord.parseWorldCoord(shop.getLocation()).equals(worldCoord)) {
         if(overrideOwner || owner != null && owner.equals(shop.getOwner().getUniqueId())) {
           recordDeletion(QUserImpl.createFullFilled(CommonUtil.getNilUniqueId(), "Towny", false), shop, reason);
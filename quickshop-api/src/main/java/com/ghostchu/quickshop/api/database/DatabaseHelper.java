@@ -12,9 +12,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Processing and handle most things about database ;)
@@ -77,6 +80,28 @@ public interface DatabaseHelper {
   @NotNull
   CompletableFuture<@Nullable DataRecord> getDataRecord(long dataId);
 
+  /**
+   * Query and getting the data records by data Ids in bulk, with a few queries instead of one query
+   * per record
+   *
+   * @param dataIds The data Ids
+   *
+   * @return The data records mapped by data Id, the Ids not exists are absent
+   */
+  @NotNull
+  CompletableFuture<@NotNull Map<Long, DataRecord>> getDataRecords(@NotNull Collection<Long> dataIds);
+
+  /**
+   * Query and getting the data records of the shops in bulk, the shop table and data table are
+   * joined so the data Ids don't need to be located one by one
+   *
+   * @param shopIds The shop Ids
+   *
+   * @return The data records mapped by shop Id, the shops not exists are absent
+   */
+  @NotNull
+  CompletableFuture<@NotNull Map<Long, DataRecord>> getShopDataRecords(@NotNull Collection<Long> shopIds);
+
   /**
    * Async gets the player last use locale code from database
    *
@@ -125,6 +150,26 @@ public interface DatabaseHelper {
   @NotNull
   List<ShopRecord> listShops(@Nullable String worldFilter, boolean deleteIfCorrupt);
 
+  /**
+   * Streams the shops to the consumer while reading the rows, so the records don't need to be
+   * buffered in memory. The consumer is called on the database reading thread.
+   *
+   * @param worldFilter     The world name, null to list shops in all worlds
+   * @param deleteIfCorrupt Delete the shop if it corrupted
+   * @param consumer        The consumer of records
+   */
+  void listShops(@Nullable String worldFilter, boolean deleteIfCorrupt, @NotNull Consumer<ShopRecord> consumer);
+
+  /**
+   * Streams the shops in given worlds to the consumer, the worlds are filtered by database so only
+   * the rows of these worlds will be read. The consumer is called on the database reading thread.
+   *
+   * @param worlds          The world names, null to list shops in all worlds
+   * @param deleteIfCorrupt Delete the shop if it corrupted
+   * @param consumer        The consumer of records
+   */
+  void listShopsInWorlds(@Nullable Collection<String> worlds, boolean deleteIfCorrupt, @NotNull Consumer<ShopRecord> consumer);
+
   @NotNull
   List<Long> listShopsTaggedBy(@NotNull UUID tagger, @NotNull String tag);
 
@@ -255,5 +300,13 @@ public interface DatabaseHelper {
    */
   CompletableFuture<Void> updateShop(@NotNull Shop shop);
 
+  /**
+   * Update multiple shop profiles to database, the data records are looked up in bulk and the shop -
+   * data mappings will be written together in a single batch.
+   *
+   * @param shops The shop objects
+   */
+  CompletableFuture<Void> updateShops(@NotNull Collection<Shop> shops);
+
   CompletableFuture<@NotNull ShopInventoryCountCache> queryInventoryCache(long shopId);
 }
@@ -0,0 +1,16 @@
+package com.ghostchu.quickshop.api.shop;
+
+/**
+ * The price statistics of the shops that trading the same item, used by the price suggestions.
+ *
+ * @param count   The amount of shops
+ * @param min     The lowest price
+ * @param max     The highest price
+ * @param average The average price
+ * @param median  The median price
+ */
+public record PriceStatistics(int count, double min, double max, double average, double median) {
+
+  public static final PriceStatistics EMPTY = new PriceStatistics(0, 0, 0, 0, 0);
+
+}
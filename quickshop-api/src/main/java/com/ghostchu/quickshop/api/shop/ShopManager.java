@@ -11,16 +11,22 @@ import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.BoundingBox;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The manager that managing shops
@@ -143,6 +149,36 @@ public interface ShopManager {
   @NotNull
   List<Shop> getAllShops();
 
+  /**
+   * Performs the given action for every shop in the memory, include unloaded, without copying them
+   * into a list first.
+   *
+   * <p>The iteration is weakly consistent: shops registered or unregistered during the iteration
+   * may or may not be visited.
+   *
+   * @param action The action to perform for each shop
+   */
+  void forEachShop(@NotNull Consumer<Shop> action);
+
+  /**
+   * Returns a weakly consistent spliterator over every shop in the memory, include unloaded.
+   *
+   * @return The shop spliterator
+   */
+  @NotNull
+  Spliterator<Shop> shopSpliterator();
+
+  /**
+   * Returns a weakly consistent stream over every shop in the memory, include unloaded. Prefer
+   * this over {@link #getAllShops()} when you don't need a snapshot copy.
+   *
+   * @param parallel Should the returned stream be parallel
+   *
+   * @return The shop stream
+   */
+  @NotNull
+  Stream<Shop> streamShops(boolean parallel);
+
   /**
    * Get all loaded shops.
    *
@@ -175,6 +211,75 @@ public interface ShopManager {
   @NotNull
   List<Shop> getAllShops(@NotNull UUID playerUUID);
 
+  /**
+   * Get a players all shops from the in-memory owner index.
+   *
+   * <p>The returned collection is an unmodifiable live view, copy it first if you're going to
+   * change shop owners while iterating.
+   *
+   * @param owner The shop owner.
+   *
+   * @return The view of this owner's all shops.
+   */
+  @NotNull
+  Collection<Shop> getOwnedShops(@NotNull QUser owner);
+
+  /**
+   * Get a real player's all shops from the in-memory owner index.
+   *
+   * <p>The returned collection is an unmodifiable live view, copy it first if you're going to
+   * change shop owners while iterating.
+   *
+   * @param owner The player's uuid.
+   *
+   * @return The view of this player's all shops.
+   */
+  @NotNull
+  Collection<Shop> getOwnedShops(@NotNull UUID owner);
+
+  /**
+   * Moves the shop to the new owner's bucket in the owner index, called by the shop after its
+   * owner changed.
+   *
+   * @param shop          The shop that owner changed
+   * @param previousOwner The owner before changes
+   */
+  @ApiStatus.Internal
+  void reindexShopOwner(@NotNull Shop shop, @NotNull QUser previousOwner);
+
+  /**
+   * Finds the shops in the world that item has any term contains the keyword, from the in-memory
+   * item search index.
+   *
+   * @param worldName The world name
+   * @param keyword   The lower-cased keyword
+   *
+   * @return The shops
+   */
+  @NotNull
+  Collection<Shop> searchShops(@NotNull String worldName, @NotNull String keyword);
+
+  /**
+   * Gets the shops in the world that selling or buying the given material, from the in-memory item
+   * search index.
+   *
+   * @param worldName The world name
+   * @param material  The material
+   *
+   * @return The shops
+   */
+  @NotNull
+  Collection<Shop> searchShops(@NotNull String worldName, @NotNull Material material);
+
+  /**
+   * Updates the shop in the item search index and the price statistics, called by the shop after
+   * its item changed.
+   *
+   * @param shop The shop that item changed
+   */
+  @ApiStatus.Internal
+  void reindexShopItem(@NotNull Shop shop);
+
   /**
    * Getting the Shop Price Limiter
    *
@@ -183,6 +288,28 @@ public interface ShopManager {
   @NotNull
   PriceLimiter getPriceLimiter();
 
+  /**
+   * Gets the price statistics of the shops that trading the item, for the price suggestions.
+   *
+   * @param item     The item
+   * @param shopType The shop type
+   * @param currency The currency, null for the default currency
+   * @param exclude  The shop that won't be counted, e.g. the shop that asking the suggestion
+   *
+   * @return The price statistics
+   */
+  @NotNull
+  PriceStatistics queryPriceStatistics(@NotNull ItemStack item, @NotNull ShopType shopType, @Nullable String currency, @Nullable Shop exclude);
+
+  /**
+   * Updates the shop in the price statistics, called by the shop after its price, type or currency
+   * changed.
+   *
+   * @param shop The shop that changed
+   */
+  @ApiStatus.Internal
+  void reindexShopPrice(@NotNull Shop shop);
+
   /**
    * Gets a shop by shop Id
    *
@@ -191,6 +318,14 @@ public interface ShopManager {
   @Nullable
   Shop getShop(long shopId);
 
+  /**
+   * Puts the shop into the shop id index, called by the shop once its shop id assigned.
+   *
+   * @param shop The shop to index
+   */
+  @ApiStatus.Internal
+  void indexShopId(@NotNull Shop shop);
+
   /**
    * Gets a shop in a specific location ATTENTION: This not include attached shops (double-chest)
    *
@@ -251,6 +386,25 @@ public interface ShopManager {
   @Nullable
   Shop getShopIncludeAttachedViaCache(@Nullable Location loc);
 
+  /**
+   * Checks whether the block may be a shop, or attached to a shop, without touching the world or
+   * the shop lookup tables.
+   *
+   * @param location The block location
+   *
+   * @return false if the block definitely not related to any shop
+   */
+  boolean mayRelateToShop(@NotNull Location location);
+
+  /**
+   * Records the lookup result of a block that passed {@link #mayRelateToShop(Location)}, for the
+   * filter statistics.
+   *
+   * @param found Whether the shop found
+   */
+  @ApiStatus.Internal
+  void recordShopLookup(boolean found);
+
 
   /**
    * Returns a new shop iterator object, allowing iteration over shops easily, instead of sorting
@@ -331,6 +485,31 @@ public interface ShopManager {
   @NotNull
   List<Shop> getShopsInWorld(@NotNull String worldName);
 
+  /**
+   * Gets the shops inside the region, include unloaded. Only the indexed chunks that overlap the
+   * region are visited, so the cost grows with the region size instead of the total shops.
+   *
+   * @param worldName The world name
+   * @param region    The region, a shop is inside when {@link BoundingBox#contains(double, double, double)}
+   *                  its block location
+   *
+   * @return The shops inside the region, the list is a new copy and safe to delete shops while
+   * iterating
+   */
+  @NotNull
+  List<Shop> queryRegion(@NotNull String worldName, @NotNull BoundingBox region);
+
+  /**
+   * Gets the shops in the chunks, include unloaded.
+   *
+   * @param chunks The chunks, duplicated chunks will be visited only once
+   *
+   * @return The shops in the chunks, the list is a new copy and safe to delete shops while
+   * iterating
+   */
+  @NotNull
+  List<Shop> queryChunks(@NotNull Collection<? extends ShopChunk> chunks);
+
 
   /**
    * Get the tax of the shop
@@ -406,6 +585,22 @@ public interface ShopManager {
    */
   CompletableFuture<?> unregisterShop(@NotNull Shop shop, boolean persist);
 
+  /**
+   * Queues a shop for the next background save, called by the shop when it becomes dirty.
+   *
+   * @param shop The dirty shop
+   */
+  @ApiStatus.Internal
+  void markShopDirty(@NotNull Shop shop);
+
+  /**
+   * Drains the dirty shops queue and saves them into database in a single batch.
+   *
+   * @return The future that completes with the amount of saved shops
+   */
+  @NotNull
+  CompletableFuture<Integer> saveDirtyShops();
+
   /**
    * Send a purchaseSuccess message for a player.
    *
@@ -476,6 +671,28 @@ public interface ShopManager {
   @NotNull
   CompletableFuture<@NotNull ShopInventoryCountCache> queryShopInventoryCacheInDatabase(@NotNull Shop shop);
 
+  /**
+   * Records the stock or space of the shop that counted on the main (or region) thread, so the
+   * other threads can read it by {@link #getInventoryCountSnapshot(Shop, boolean)}.
+   *
+   * @param shop  The shop
+   * @param stock True for the stock, false for the space
+   * @param count The stock or space
+   */
+  @ApiStatus.Internal
+  void recordInventoryCount(@NotNull Shop shop, boolean stock, int count);
+
+  /**
+   * Gets the stock or space of the shop from the last count, for the threads that can't count the
+   * shop inventory. The database cache is only consulted if the shop never counted since boot.
+   *
+   * @param shop  The shop
+   * @param stock True for the stock, false for the space
+   *
+   * @return The stock or space
+   */
+  int getInventoryCountSnapshot(@NotNull Shop shop, boolean stock);
+
   /**
    * An getActions() alternative.
    */
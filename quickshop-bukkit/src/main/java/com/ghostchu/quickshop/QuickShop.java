@@ -78,6 +78,7 @@ import com.ghostchu.quickshop.shop.controlpanel.SimpleShopControlPanelManager;
 import com.ghostchu.quickshop.shop.display.AbstractDisplayItem;
 import com.ghostchu.quickshop.shop.display.virtual.VirtualDisplayItemManager;
 import com.ghostchu.quickshop.shop.inventory.BukkitInventoryWrapperManager;
+import com.ghostchu.quickshop.shop.inventory.InventoryWrapperUpdateManager;
 import com.ghostchu.quickshop.shop.signhooker.SignHooker;
 import com.ghostchu.quickshop.util.FastPlayerFinder;
 import com.ghostchu.quickshop.util.ItemMarker;
@@ -159,7 +160,6 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -329,8 +329,8 @@ public class QuickShop implements QuickShopAPI, Reloadable {
   private MetricManager metricManager;
   @Getter
   private RegistryManager registry;
-//    @Getter
-//    private InventoryWrapperUpdateManager invWrapperUpdateManager;
+  @Getter
+  private InventoryWrapperUpdateManager invWrapperUpdateManager;
 
   public QuickShop(final QuickShopBukkit javaPlugin, final Logger logger, final Platform platform) {
 
@@ -743,8 +743,8 @@ public class QuickShop implements QuickShopAPI, Reloadable {
     logger.info("Registering commands...");
     this.permissionChecker = new PermissionChecker(this);
     loadCommandHandler();
-//        this.invWrapperUpdateManager = new InventoryWrapperUpdateManager(this);
-//        this.invWrapperUpdateManager.register();
+    this.invWrapperUpdateManager = new InventoryWrapperUpdateManager(this);
+    this.invWrapperUpdateManager.register();
     this.shopManager = new SimpleShopManager(this);
     // Limit
     //this.registerLimitRanks();
@@ -753,7 +753,7 @@ public class QuickShop implements QuickShopAPI, Reloadable {
     if(getConfig().getInt("shop.finding.distance") > 100 && getConfig().getBoolean("shop.finding.exclude-out-of-stock")) {
       logger.error("Shop find distance is too high with chunk loading feature turned on! It may cause lag! Pick a number below 100!");
     }
-    signUpdateWatcher = new SignUpdateWatcher();
+    signUpdateWatcher = new SignUpdateWatcher(this);
     //shopContainerWatcher = new ShopContainerWatcher();
     shopSaveWatcher = new ShopDataSaveWatcher(this);
     shopSaveWatcher.start(0, 20L * 60L * 5L);
@@ -892,7 +892,7 @@ public class QuickShop implements QuickShopAPI, Reloadable {
     if(PackageUtil.parsePackageProperly("bakeuuids").asBoolean(false)) {
       logger.info("Baking shops owner and moderators caches (This may take a while if you upgrade from old versions)...");
       final Set<UUID> waitingForBake = new HashSet<>();
-      this.shopManager.getAllShops().forEach(shop->{
+      this.shopManager.forEachShop(shop->{
         final UUID uuid = shop.getOwner().getUniqueIdIfRealPlayer().orElse(null);
         if(uuid != null && !this.playerFinder.isCached(uuid)) {
           waitingForBake.add(uuid);
@@ -1000,7 +1000,7 @@ public class QuickShop implements QuickShopAPI, Reloadable {
 
     calendarWatcher = new CalendarWatcher(this);
     // shopVaildWatcher.runTaskTimer(this, 0, 20 * 60); // Nobody use it
-    signUpdateWatcher.start(1, 10);
+    signUpdateWatcher.start(1, 1);
     //shopContainerWatcher.runTaskTimer(this, 0, 5); // Nobody use it
     if(logWatcher != null) {
       logWatcher.start(10, 10);
@@ -1150,10 +1150,7 @@ public class QuickShop implements QuickShopAPI, Reloadable {
     }
     if(getShopManager() != null) {
       logger.info("Saving all in-memory changed shops...");
-      final List<CompletableFuture<Void>> futures = getShopManager().getAllShops().stream().filter(Shop::isDirty).map(Shop::update).toList();
-      final CompletableFuture<?>[] completableFutures = futures.toArray(new CompletableFuture<?>[0]);
-      CompletableFuture.allOf(completableFutures)
-              .join();
+      this.shopManager.saveDirtyShops().join();
     }
     /* Remove all display items, and any dupes we can find */
     if(shopManager != null) {
@@ -1181,6 +1178,10 @@ public class QuickShop implements QuickShopAPI, Reloadable {
     }
     logger.info("Shutting down 3rd-party integrations...");
     unload3rdParty();
+    if(this.databaseHelper != null) {
+      logger.info("Flushing pending database writes...");
+      this.databaseHelper.shutdown();
+    }
     if(this.getSqlManager() != null) {
       logger.info("Shutting down database connections...");
       EasySQL.shutdownManager(this.getSqlManager());
@@ -44,18 +44,8 @@ public class SubCommand_Browse implements CommandHandler<Player> {
       final List<Shop> shops = new ArrayList<>();
 
       if(world) {
-        shops.addAll(plugin.getShopManager().getAllShops().stream().filter(shop->{
-          if(shop.getLocation().getWorld() == null
-             || sender.getLocation().getWorld() == null) {
-            return false;
-          }
-
-          if(shop.getRemainingStock() == 0) {
-            return false;
-          }
-
-          return shop.getLocation().getWorld().getUID().equals(sender.getLocation().getWorld().getUID());
-        }).toList());
+        //Only the shops in the world of sender, from the world-chunk-shop mapping
+        shops.addAll(plugin.getShopManager().getShopsInWorld(sender.getWorld()).stream().filter(shop->shop.getRemainingStock() != 0).toList());
       } else {
         shops.addAll(plugin.getShopManager().getAllShops().stream().filter(shop->{
 
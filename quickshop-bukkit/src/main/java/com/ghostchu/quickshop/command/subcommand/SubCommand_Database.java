@@ -60,6 +60,17 @@ public class SubCommand_Database implements CommandHandler<CommandSender> {
 
   private void handleTrim(@NotNull final CommandSender sender, @NotNull final List<String> subParams) {
 
+    if(!subParams.isEmpty() && "dryrun".equalsIgnoreCase(subParams.get(0))) {
+      plugin.text().of(sender, "database.trim-start").send();
+      final SimpleDatabaseHelperV2 databaseHelper = (SimpleDatabaseHelperV2)plugin.getDatabaseHelper();
+      databaseHelper.purgeIsolated(true)
+              .thenAccept(result->plugin.text().of(sender, "database.trim-dry-run", result.getLeft(), result.getRight()).send())
+              .exceptionally(err->{
+                plugin.text().of(sender, "internal-error", err.getMessage()).send();
+                return null;
+              });
+      return;
+    }
     if(subParams.isEmpty() || !"confirm".equalsIgnoreCase(subParams.get(0))) {
       plugin.text().of(sender, "database.trim-warning").send();
       return;
@@ -15,7 +15,6 @@ import com.ghostchu.quickshop.shop.display.AbstractDisplayItem;
 import com.ghostchu.quickshop.util.MsgUtil;
 import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.performance.BatchBukkitExecutor;
-import com.google.common.cache.Cache;
 import com.google.common.hash.Hashing;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -247,7 +246,7 @@ public class SubCommand_Debug implements CommandHandler<CommandSender> {
 
     final SimpleShopManager shopManager = (SimpleShopManager)plugin.getShopManager();
     final SimpleShopCache simpleShopCache = (SimpleShopCache)shopManager.getShopCache();
-    simpleShopCache.getCaches().values().forEach(Cache::invalidateAll);
+    simpleShopCache.invalidateAll(null);
     sender.sendMessage("Cleared!");
   }
 
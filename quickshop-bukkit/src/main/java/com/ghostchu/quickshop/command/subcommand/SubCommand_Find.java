@@ -5,25 +5,23 @@ import com.ghostchu.quickshop.api.command.CommandHandler;
 import com.ghostchu.quickshop.api.command.CommandParser;
 import com.ghostchu.quickshop.api.event.ItemPreviewComponentPrePopulateEvent;
 import com.ghostchu.quickshop.api.shop.Shop;
+import com.ghostchu.quickshop.api.shop.ShopManager;
 import com.ghostchu.quickshop.api.shop.permission.BuiltInShopPermission;
+import com.ghostchu.quickshop.shop.ShopItemSearchIndex;
 import com.ghostchu.quickshop.util.MsgUtil;
 import com.ghostchu.quickshop.util.Util;
 import io.papermc.lib.PaperLib;
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
-import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 
 public class SubCommand_Find implements CommandHandler<Player> {
 
@@ -43,7 +41,6 @@ public class SubCommand_Find implements CommandHandler<Player> {
     }
 
     final Location loc = sender.getLocation().clone();
-    final Vector playerVector = loc.toVector();
 
     //Combing command args
     final StringBuilder sb = new StringBuilder(parser.getArgs().get(0));
@@ -66,70 +63,56 @@ public class SubCommand_Find implements CommandHandler<Player> {
     final boolean global = plugin.getConfig().getBoolean("shop.finding.global", false);
     final boolean excludeOutOfStock = plugin.getConfig().getBoolean("shop.finding.exclude-out-of-stock");
 
-    //Rewrite by Ghost_chu - Use vector to replace old chunks finding.
-
-    final Map<Shop, Double> aroundShops = new HashMap<>();
-
-    //Choose finding source
-    final Collection<Shop> scanPool;
-    if(allShops) {
-      scanPool = plugin.getShopManager().getAllShops();
+    if(loc.getWorld() == null) {
+      plugin.text().of(sender, "no-nearby-shop", lookFor).send();
+      return;
+    }
+    //Look up the shops that trading items we want from the item search index
+    final ShopManager shopManager = plugin.getShopManager();
+    final ItemStack markedItem = plugin.getItemMarker().get(originLookFor);
+    final Collection<Shop> matchedShops;
+    if(markedItem != null) {
+      matchedShops = shopManager.searchShops(loc.getWorld().getName(), markedItem.getType()).stream()
+              .filter(shop->plugin.getItemMatcher().matches(markedItem, shop.getItem()))
+              .toList();
     } else {
-      scanPool = plugin.getShopManager().getLoadedShops();
+      matchedShops = shopManager.searchShops(loc.getWorld().getName(), lookFor);
     }
-    //Calc distance between player and shop
-    for(final Shop shop : scanPool) {
-      if(!Objects.equals(shop.getLocation().getWorld(), loc.getWorld())) {
-        continue;
+    final boolean bypassSearchPermission = plugin.perm().hasPermission(sender, "quickshop.other.search");
+    //Calc distance between player and shop, only check the nearest shops until enough shops found
+    final List<ShopItemSearchIndex.ShopDistance> sortedShops = new ArrayList<>(ShopItemSearchIndex.nearest(matchedShops, loc, global? Double.POSITIVE_INFINITY : maxDistance, shopLimit, shop->{
+      //Choose finding source
+      if(!allShops && !shop.isLoaded()) {
+        return false;
       }
-      if(aroundShops.size() == shopLimit) {
-        break;
+      if(!bypassSearchPermission && !shop.playerAuthorize(sender.getUniqueId(), BuiltInShopPermission.SEARCH)) {
+        return false;
       }
-      if(!shop.playerAuthorize(sender.getUniqueId(), BuiltInShopPermission.SEARCH)
-         && !plugin.perm().hasPermission(sender, "quickshop.other.search")) {
-        continue;
+      if(excludeOutOfStock) {
+        return (!shop.isSelling() || shop.getRemainingStock() != 0) && (!shop.isBuying() || shop.getRemainingSpace() != 0);
       }
-      final Vector shopVector = shop.getLocation().toVector();
-      final double distance = shopVector.distance(playerVector);
-      //Check distance
-      if(distance <= maxDistance || global) {
-        //Collect valid shop that trading items we want
-        if(!ChatColor.stripColor(LegacyComponentSerializer.legacySection().serialize(Util.getItemStackName(shop.getItem()))).toLowerCase().contains(lookFor)
-           && !shop.getItem().getType().name().toLowerCase().contains(lookFor)
-           && !Util.findStringInList(Util.getEnchantsForItemStack(shop.getItem()), lookFor)
-           && plugin.getItemMarker().get(originLookFor) == null) {
-          continue;
-        }
-        if(excludeOutOfStock) {
-          if((shop.isSelling() && shop.getRemainingStock() == 0) || (shop.isBuying() && shop.getRemainingSpace() == 0)) {
-            continue;
-          }
-        }
-        aroundShops.put(shop, distance);
-      }
-    }
+      return true;
+    }));
     //Check if no shops found
-    if(aroundShops.isEmpty()) {
+    if(sortedShops.isEmpty()) {
       plugin.text().of(sender, "no-nearby-shop", lookFor).send();
       return;
     }
-
-    //Okay now all shops is our wanted shop in Map
-
-    final List<Map.Entry<Shop, Double>> sortedShops = aroundShops.entrySet().stream().sorted(Map.Entry.<Shop, Double> comparingByValue(Double::compare).reversed()).toList();
+    //Farthest first, so the nearest shop is the last line in chat
+    Collections.reverse(sortedShops);
 
     //Function
     if(usingOldLogic) {
-      final Map.Entry<Shop, Double> closest = sortedShops.get(0);
-      final Location lookAt = closest.getKey().getLocation().clone().add(0.5, 0.5, 0.5);
+      final ShopItemSearchIndex.ShopDistance closest = sortedShops.get(0);
+      final Location lookAt = closest.shop().getLocation().clone().add(0.5, 0.5, 0.5);
       PaperLib.teleportAsync(sender, Util.lookAt(sender.getEyeLocation(), lookAt).add(0, -1.62, 0),
                              PlayerTeleportEvent.TeleportCause.UNKNOWN);
-      plugin.text().of(sender, "nearby-shop-this-way", closest.getValue().intValue()).send();
+      plugin.text().of(sender, "nearby-shop-this-way", (int)closest.distance()).send();
     } else {
       plugin.text().of(sender, "nearby-shop-header", lookFor).send();
-      for(final Map.Entry<Shop, Double> shopDoubleEntry : sortedShops) {
+      for(final ShopItemSearchIndex.ShopDistance shopDistance : sortedShops) {
 
-        final Shop shop = shopDoubleEntry.getKey();
+        final Shop shop = shopDistance.shop();
         final Location location = shop.getLocation();
         ItemStack previewItemStack = shop.getItem().clone();
         final ItemPreviewComponentPrePopulateEvent previewComponentPrePopulateEvent = new ItemPreviewComponentPrePopulateEvent(previewItemStack, sender);
@@ -142,7 +125,7 @@ public class SubCommand_Find implements CommandHandler<Player> {
                                                     location.getBlockX(),
                                                     location.getBlockY(),
                                                     location.getBlockZ(),
-                                                    shopDoubleEntry.getValue().intValue()
+                                                    (int)shopDistance.distance()
                                                    ).forLocale();
         entryComponent = plugin.getPlatform().setItemStackHoverEvent(entryComponent, previewItemStack);
         MsgUtil.sendDirectMessage(sender, entryComponent);
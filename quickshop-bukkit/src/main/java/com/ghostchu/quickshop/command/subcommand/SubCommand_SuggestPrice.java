@@ -3,18 +3,16 @@ package com.ghostchu.quickshop.command.subcommand;
 import com.ghostchu.quickshop.QuickShop;
 import com.ghostchu.quickshop.api.command.CommandHandler;
 import com.ghostchu.quickshop.api.command.CommandParser;
+import com.ghostchu.quickshop.api.shop.PriceStatistics;
 import com.ghostchu.quickshop.api.shop.Shop;
-import com.ghostchu.quickshop.common.util.CommonUtil;
-import com.ghostchu.quickshop.util.Util;
+import com.ghostchu.quickshop.api.shop.ShopManager;
+import com.ghostchu.quickshop.api.shop.ShopType;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-import java.util.Objects;
-
 public class SubCommand_SuggestPrice implements CommandHandler<Player> {
 
   private final QuickShop plugin;
@@ -27,6 +25,7 @@ public class SubCommand_SuggestPrice implements CommandHandler<Player> {
   @Override
   public void onCommand(@NotNull final Player sender, @NotNull final String commandLabel, @NotNull final CommandParser parser) {
 
+    final ShopManager shopManager = plugin.getShopManager();
     final Shop shop = getLookingShop(sender);
     if(shop == null) {
 
@@ -37,79 +36,37 @@ public class SubCommand_SuggestPrice implements CommandHandler<Player> {
         return;
       }
 
-      plugin.text().of(sender, "suggest-wait").send();
-      Util.asyncThreadRun(()->{
-        Shop shop1 = null;
-
-        for(final Shop shopTest : plugin.getShopManager().getAllShops()) {
-          if(plugin.getItemMatcher().matches(stack, shopTest.getItem())) {
-            shop1 = shopTest;
-            break;
-          }
-        }
-
-        if(shop1 == null) {
-          plugin.text().of(sender, "cannot-suggest-price", 0).send();
-          return;
-        }
-
-        final List<Double> matchedBuy = plugin.getShopManager().getAllShops().stream()
-                .filter(s->plugin.getItemMatcher().matches(stack, s.getItem()))
-                .map(Shop::getPrice)
-                .toList();
-
-        final List<Double> matchedSell = plugin.getShopManager().getAllShops().stream()
-                .filter(s->plugin.getItemMatcher().matches(stack, s.getItem()))
-                .map(Shop::getPrice)
-                .toList();
-
-        final int totalSize = (matchedBuy.size() + matchedSell.size());
-
-        if(totalSize < 3) {
-          plugin.text().of(sender, "cannot-suggest-price", totalSize).send();
-          return;
-        }
-
-        double min = CommonUtil.min(matchedBuy);
-        double max = CommonUtil.max(matchedBuy);
-        double avg = CommonUtil.avg(matchedBuy);
-        double med = CommonUtil.med(matchedBuy);
-
-        if(matchedBuy.size() >= 3) {
-          final Component suggest = plugin.text().of(sender, "price-suggest", matchedBuy.size(), format(max, shop1), format(min, shop1), format(avg, shop1), format(med, shop1), format(med, shop1)).forLocale();
-          plugin.text().of(sender, "price-suggest-multi", plugin.text().of(sender, "shop-type.buying").forLocale(), suggest).send();
-        }
-
-        if(matchedSell.size() >= 3) {
-          min = CommonUtil.min(matchedSell);
-          max = CommonUtil.max(matchedSell);
-          avg = CommonUtil.avg(matchedSell);
-          med = CommonUtil.med(matchedSell);
-          final Component suggest = plugin.text().of(sender, "price-suggest", matchedSell.size(), format(max, shop1), format(min, shop1), format(avg, shop1), format(med, shop1), format(med, shop1)).forLocale();
-          plugin.text().of(sender, "price-suggest-multi", plugin.text().of(sender, "shop-type.selling").forLocale(), suggest).send();
-        }
-      });
-      return;
-    }
-    plugin.text().of(sender, "suggest-wait").send();
-    Util.asyncThreadRun(()->{
-      final List<Double> matched = plugin.getShopManager().getAllShops().stream()
-              .filter(s->s.getShopId() != shop.getShopId())
-              .filter(s->s.getShopType() == shop.getShopType())
-              .filter(s->Objects.equals(s.getCurrency(), shop.getCurrency()))
-              .filter(s->plugin.getItemMatcher().matches(shop.getItem(), s.getItem()))
-              .map(Shop::getPrice)
-              .toList();
-      if(matched.size() < 3) {
-        plugin.text().of(sender, "cannot-suggest-price", matched.size()).send();
+      final PriceStatistics buying = shopManager.queryPriceStatistics(stack, ShopType.BUYING, null, null);
+      final PriceStatistics selling = shopManager.queryPriceStatistics(stack, ShopType.SELLING, null, null);
+      final int totalSize = buying.count() + selling.count();
+
+      if(totalSize < 3) {
+        plugin.text().of(sender, "cannot-suggest-price", totalSize).send();
         return;
       }
-      final double min = CommonUtil.min(matched);
-      final double max = CommonUtil.max(matched);
-      final double avg = CommonUtil.avg(matched);
-      final double med = CommonUtil.med(matched);
-      plugin.text().of(sender, "price-suggest", matched.size(), format(max, shop), format(min, shop), format(avg, shop), format(med, shop), format(med, shop)).send();
-    });
+
+      if(buying.count() >= 3) {
+        final Component suggest = plugin.text().of(sender, "price-suggest", buying.count(), format(buying.max(), sender), format(buying.min(), sender), format(buying.average(), sender), format(buying.median(), sender), format(buying.median(), sender)).forLocale();
+        plugin.text().of(sender, "price-suggest-multi", plugin.text().of(sender, "shop-type.buying").forLocale(), suggest).send();
+      }
+
+      if(selling.count() >= 3) {
+        final Component suggest = plugin.text().of(sender, "price-suggest", selling.count(), format(selling.max(), sender), format(selling.min(), sender), format(selling.average(), sender), format(selling.median(), sender), format(selling.median(), sender)).forLocale();
+        plugin.text().of(sender, "price-suggest-multi", plugin.text().of(sender, "shop-type.selling").forLocale(), suggest).send();
+      }
+      return;
+    }
+    final PriceStatistics matched = shopManager.queryPriceStatistics(shop.getItem(), shop.getShopType(), shop.getCurrency(), shop);
+    if(matched.count() < 3) {
+      plugin.text().of(sender, "cannot-suggest-price", matched.count()).send();
+      return;
+    }
+    plugin.text().of(sender, "price-suggest", matched.count(), format(matched.max(), shop), format(matched.min(), shop), format(matched.average(), shop), format(matched.median(), shop), format(matched.median(), shop)).send();
+  }
+
+  private String format(final double d, final Player player) {
+
+    return plugin.getShopManager().format(d, player.getWorld(), null);
   }
 
   private String format(final double d, final Shop shop) {
@@ -47,9 +47,11 @@ public enum DataTables {
 
     table.addColumn("create_time", "DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP"); // SHOP CREATE TIME
     table.addColumn("benefit", "MEDIUMTEXT"); // BENEFIT (JSON) version 10
+    table.addColumn("content_digest", "VARCHAR(64)"); // SHA-256 OF THE RECORD CONTENT version 17
     // table.addColumn("remove_time", "DATETIME"); // SHOP REMOVE TIME (NULL if not removed)
 
     table.setIndex(IndexType.INDEX, "idx_qs_data_owner", "owner");
+    table.setIndex(IndexType.INDEX, "idx_qs_data_digest", "content_digest");
   }),
 
   SHOPS("shops", (table)->{
@@ -0,0 +1,449 @@
+package com.ghostchu.quickshop.database;
+
+import cc.carm.lib.easysql.api.SQLManager;
+import com.ghostchu.quickshop.common.util.JsonUtil;
+import com.ghostchu.quickshop.util.logger.Log;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedicated pipeline for the purchase and transaction logs.
+ * <p>
+ * Log rows are queued in a bounded buffer and written by a single thread with multi-row INSERTs, so a
+ * busy market can't flood the shared HikariCP executor. When the buffer is full the configured
+ * {@link OverflowPolicy} decides what happens to the new row.
+ */
+public class PurchaseLogWriter implements AutoCloseable {
+
+  private final SQLManager manager;
+  private final Logger logger;
+  private final BlockingQueue<LogEntry> buffer;
+  private final int batchSize;
+  private final long flushInterval;
+  private final OverflowPolicy overflowPolicy;
+  private final File spillFile;
+  private final Object spillLock = new Object();
+  private final Thread flusher;
+  private volatile boolean running = true;
+  // Metrics
+  private final LongAdder writtenRows = new LongAdder();
+  private final LongAdder flushes = new LongAdder();
+  private final LongAdder flushNanos = new LongAdder();
+  private final LongAdder queuedNanos = new LongAdder();
+  private final LongAdder droppedRows = new LongAdder();
+  private final LongAdder spilledRows = new LongAdder();
+  private volatile long lastFlushNanos;
+
+  /**
+   * Creates and starts the log writer.
+   *
+   * @param manager        The SQL manager to borrow connections from
+   * @param logger         The logger
+   * @param capacity       The buffer capacity
+   * @param batchSize      The maximum rows in a single INSERT
+   * @param flushInterval  The interval (in milliseconds) to wait for new rows, and to retry the spilled rows
+   * @param overflowPolicy What to do when the buffer is full
+   * @param spillFile      The file to spill the rows into
+   */
+  public PurchaseLogWriter(@NotNull final SQLManager manager, @NotNull final Logger logger, final int capacity, final int batchSize, final long flushInterval, @NotNull final OverflowPolicy overflowPolicy, @NotNull final File spillFile) {
+
+    this.manager = manager;
+    this.logger = logger;
+    this.buffer = new ArrayBlockingQueue<>(Math.max(16, capacity));
+    this.batchSize = Math.max(1, batchSize);
+    this.flushInterval = Math.max(10, flushInterval);
+    this.overflowPolicy = overflowPolicy;
+    this.spillFile = spillFile;
+    this.flusher = new Thread(this::run, "QuickShop-Hikari-LogWriter");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Queues a log row.
+   *
+   * @param kind   The log kind
+   * @param time   The time of this log
+   * @param params The values, in the same order as {@link LogKind#getColumns()}
+   *
+   * @return The future that completes with the written rows
+   */
+  @NotNull
+  public CompletableFuture<Integer> submit(@NotNull final LogKind kind, final long time, @Nullable final Object... params) {
+
+    final LogEntry entry = new LogEntry(kind, time, params == null? new Object[0] : params, System.nanoTime(), new CompletableFuture<>());
+    if(!running) {
+      spill(List.of(entry));
+      return entry.future();
+    }
+    if(buffer.offer(entry)) {
+      return entry.future();
+    }
+    switch(overflowPolicy) {
+      case BLOCK -> {
+        try {
+          buffer.put(entry);
+        } catch(final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          spill(List.of(entry));
+        }
+      }
+      case SPILL -> spill(List.of(entry));
+      case DROP -> {
+        droppedRows.increment();
+        entry.future().complete(0);
+      }
+    }
+    return entry.future();
+  }
+
+  private void run() {
+
+    final List<LogEntry> batch = new ArrayList<>(batchSize);
+    while(running || !buffer.isEmpty()) {
+      try {
+        final LogEntry first = buffer.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if(first == null) {
+          replaySpilled();
+          continue;
+        }
+        batch.add(first);
+        buffer.drainTo(batch, batchSize - 1);
+        flush(batch);
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch(final Throwable th) {
+        logger.warn("Unexpected error in the log writer", th);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(@NotNull final List<LogEntry> batch) {
+
+    final long startTime = System.nanoTime();
+    final List<LogEntry> failed = write(batch);
+    if(!failed.isEmpty()) {
+      spill(failed);
+    }
+    final long now = System.nanoTime();
+    lastFlushNanos = now - startTime;
+    flushNanos.add(lastFlushNanos);
+    flushes.increment();
+    for(final LogEntry entry : batch) {
+      queuedNanos.add(now - entry.queuedAt());
+    }
+  }
+
+  @NotNull
+  private List<LogEntry> write(@NotNull final List<LogEntry> entries) {
+
+    final Map<LogKind, List<LogEntry>> grouped = new EnumMap<>(LogKind.class);
+    for(final LogEntry entry : entries) {
+      grouped.computeIfAbsent(entry.kind(), k->new ArrayList<>()).add(entry);
+    }
+    final List<LogEntry> failed = new ArrayList<>();
+    for(final Map.Entry<LogKind, List<LogEntry>> group : grouped.entrySet()) {
+      failed.addAll(write(group.getKey(), group.getValue()));
+    }
+    return failed;
+  }
+
+  /**
+   * Writes the entries with one multi-row INSERT, falling back to row by row if it fails.
+   *
+   * @return The entries still failed to write
+   */
+  @NotNull
+  private List<LogEntry> write(@NotNull final LogKind kind, @NotNull final List<LogEntry> entries) {
+
+    try(Connection connection = manager.getConnection();
+        PreparedStatement ps = connection.prepareStatement(kind.insertSQL(entries.size()))) {
+      int index = 1;
+      for(final LogEntry entry : entries) {
+        index = bind(ps, index, entry);
+      }
+      ps.executeUpdate();
+      writtenRows.add(entries.size());
+      entries.forEach(entry->entry.future().complete(1));
+      return List.of();
+    } catch(final SQLException e) {
+      Log.debug("Multi-row log insert failed, falling back to row by row: " + e.getMessage());
+    }
+    final List<LogEntry> failed = new ArrayList<>();
+    for(final LogEntry entry : entries) {
+      try(Connection connection = manager.getConnection();
+          PreparedStatement ps = connection.prepareStatement(kind.insertSQL(1))) {
+        bind(ps, 1, entry);
+        ps.executeUpdate();
+        writtenRows.increment();
+        entry.future().complete(1);
+      } catch(final SQLException e) {
+        logger.warn("Failed to write {} log", kind.name().toLowerCase(Locale.ROOT), e);
+        failed.add(entry);
+      }
+    }
+    return failed;
+  }
+
+  private int bind(@NotNull final PreparedStatement ps, int index, @NotNull final LogEntry entry) throws SQLException {
+
+    ps.setTimestamp(index++, new Timestamp(entry.time()));
+    for(final Object param : entry.params()) {
+      ps.setObject(index++, param);
+    }
+    return index;
+  }
+
+  private void spill(@NotNull final List<LogEntry> entries) {
+
+    synchronized(spillLock) {
+      try(BufferedWriter writer = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        for(final LogEntry entry : entries) {
+          writer.write(entry.toJson().toString());
+          writer.newLine();
+        }
+        spilledRows.add(entries.size());
+        entries.forEach(entry->entry.future().complete(0));
+      } catch(final IOException e) {
+        logger.warn("Failed to spill {} log rows to {}, the rows are dropped", entries.size(), spillFile, e);
+        droppedRows.add(entries.size());
+        entries.forEach(entry->entry.future().completeExceptionally(e));
+      }
+    }
+  }
+
+  /**
+   * Writes the spilled rows back to the database when the writer is idle.
+   */
+  private void replaySpilled() {
+
+    if(!running || !spillFile.exists()) {
+      return;
+    }
+    final List<String> lines;
+    synchronized(spillLock) {
+      try {
+        lines = Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+        Files.delete(spillFile.toPath());
+      } catch(final IOException e) {
+        Log.debug("Failed to read spilled log rows: " + e.getMessage());
+        return;
+      }
+    }
+    final List<LogEntry> entries = new ArrayList<>(lines.size());
+    for(final String line : lines) {
+      if(line.isBlank()) {
+        continue;
+      }
+      try {
+        entries.add(LogEntry.fromJson(JsonUtil.readObject(line)));
+      } catch(final RuntimeException e) {
+        logger.warn("Skipping corrupted spilled log row: {}", line);
+        droppedRows.increment();
+      }
+    }
+    Log.debug("Replaying " + entries.size() + " spilled log rows.");
+    for(int i = 0; i < entries.size(); i += batchSize) {
+      final List<LogEntry> failed = write(entries.subList(i, Math.min(entries.size(), i + batchSize)));
+      if(!failed.isEmpty()) {
+        // The database still unavailable, put them back and retry later
+        final List<LogEntry> rest = new ArrayList<>(failed);
+        rest.addAll(entries.subList(Math.min(entries.size(), i + batchSize), entries.size()));
+        spill(rest);
+        return;
+      }
+    }
+  }
+
+  public int getQueueDepth() {
+
+    return buffer.size();
+  }
+
+  public int getQueueCapacity() {
+
+    return buffer.size() + buffer.remainingCapacity();
+  }
+
+  public long getWrittenRows() {
+
+    return writtenRows.sum();
+  }
+
+  public long getDroppedRows() {
+
+    return droppedRows.sum();
+  }
+
+  public long getSpilledRows() {
+
+    return spilledRows.sum();
+  }
+
+  public double getAverageFlushMillis() {
+
+    final long count = flushes.sum();
+    return count == 0? 0 : flushNanos.sum() / 1_000_000d / count;
+  }
+
+  public double getLastFlushMillis() {
+
+    return lastFlushNanos / 1_000_000d;
+  }
+
+  public double getAverageQueuedMillis() {
+
+    final long rows = writtenRows.sum();
+    return rows == 0? 0 : queuedNanos.sum() / 1_000_000d / rows;
+  }
+
+  @NotNull
+  public OverflowPolicy getOverflowPolicy() {
+
+    return overflowPolicy;
+  }
+
+  /**
+   * Stops accepting new rows and writes everything still in the buffer.
+   */
+  @Override
+  public void close() {
+
+    running = false;
+    try {
+      flusher.join(TimeUnit.SECONDS.toMillis(30));
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    final List<LogEntry> remaining = new ArrayList<>();
+    buffer.drainTo(remaining);
+    if(!remaining.isEmpty()) {
+      spill(remaining);
+    }
+  }
+
+  public enum OverflowPolicy {
+    /**
+     * Blocks the caller until the buffer have space.
+     */
+    BLOCK,
+    /**
+     * Appends the row to the spill file, it will be written back when the writer idle.
+     */
+    SPILL,
+    /**
+     * Drops the row and increase the dropped counter.
+     */
+    DROP
+  }
+
+  public enum LogKind {
+    PURCHASE(DataTables.LOG_PURCHASE, "shop", "data", "buyer", "type", "amount", "money", "tax"),
+    TRANSACTION(DataTables.LOG_TRANSACTION, "from", "to", "currency", "amount", "tax_amount", "tax_account", "error");
+
+    private final DataTables table;
+    private final String[] columns;
+
+    LogKind(@NotNull final DataTables table, @NotNull final String... columns) {
+
+      this.table = table;
+      this.columns = columns;
+    }
+
+    @NotNull
+    public String[] getColumns() {
+
+      return columns.clone();
+    }
+
+    @NotNull
+    private String insertSQL(final int rows) {
+
+      final StringBuilder builder = new StringBuilder("INSERT INTO `").append(table.getName()).append("` (`time`");
+      final StringBuilder row = new StringBuilder("(?");
+      for(final String column : columns) {
+        builder.append(", `").append(column).append('`');
+        row.append(", ?");
+      }
+      row.append(')');
+      builder.append(") VALUES ");
+      for(int i = 0; i < rows; i++) {
+        if(i != 0) {
+          builder.append(", ");
+        }
+        builder.append(row);
+      }
+      return builder.toString();
+    }
+  }
+
+  private record LogEntry(@NotNull LogKind kind, long time, @NotNull Object[] params, long queuedAt,
+                          @NotNull CompletableFuture<Integer> future) {
+
+    @NotNull
+    private JsonObject toJson() {
+
+      final JsonObject object = new JsonObject();
+      object.addProperty("kind", kind.name());
+      object.addProperty("time", time);
+      final JsonArray array = new JsonArray();
+      for(final Object param : params) {
+        if(param == null) {
+          array.add((JsonElement)null);
+        } else if(param instanceof final Number number) {
+          array.add(number);
+        } else {
+          array.add(param.toString());
+        }
+      }
+      object.add("params", array);
+      return object;
+    }
+
+    @NotNull
+    private static LogEntry fromJson(@NotNull final JsonObject object) {
+
+      final JsonArray array = object.getAsJsonArray("params");
+      final Object[] params = new Object[array.size()];
+      for(int i = 0; i < params.length; i++) {
+        final JsonElement element = array.get(i);
+        if(element == null || element.isJsonNull()) {
+          params[i] = null;
+        } else {
+          final JsonPrimitive primitive = element.getAsJsonPrimitive();
+          params[i] = primitive.isNumber()? primitive.getAsBigDecimal() : primitive.getAsString();
+        }
+      }
+      return new LogEntry(LogKind.valueOf(object.get("kind").getAsString()), object.get("time").getAsLong(), params, System.nanoTime(), new CompletableFuture<>());
+    }
+  }
+}
@@ -22,9 +22,12 @@ import com.ghostchu.quickshop.database.bean.SimpleDataRecord;
 import com.ghostchu.quickshop.shop.ContainerShop;
 import com.ghostchu.quickshop.shop.cache.SimpleShopInventoryCountCache;
 import com.ghostchu.quickshop.util.PackageUtil;
+import com.ghostchu.quickshop.util.ProgressMonitor;
 import com.ghostchu.quickshop.util.logger.Log;
 import com.ghostchu.quickshop.util.performance.PerfMonitor;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.bukkit.Location;
 import org.jetbrains.annotations.NotNull;
@@ -39,17 +42,29 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
 
 /**
  * A Util to execute all SQLs.
  */
 public class SimpleDatabaseHelperV2 implements DatabaseHelper {
 
+  // SQLite allows 999 parameters per statement at most
+  private static final int BULK_QUERY_PARTITION_SIZE = 500;
+  private static final int PURGE_BATCH_SIZE = 500;
+  private static final int LIST_SHOPS_FETCH_SIZE = 500;
+
   @NotNull
   private final SQLManager manager;
 
@@ -59,19 +74,110 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
   @NotNull
   private final String prefix;
 
-  private final int LATEST_DATABASE_VERSION = 16;
+  private final int LATEST_DATABASE_VERSION = 17;
+
+  @NotNull
+  private final WriteBehindQueue writeBehindQueue;
+
+  @NotNull
+  private final PurchaseLogWriter purchaseLogWriter;
 
   public SimpleDatabaseHelperV2(@NotNull final QuickShop plugin, @NotNull final SQLManager manager, @NotNull final String prefix) throws Exception {
 
     this.plugin = plugin;
     this.manager = manager;
     this.prefix = prefix;
+    this.writeBehindQueue = new WriteBehindQueue(manager, plugin.logger(),
+                                                 plugin.getConfig().getBoolean("database.write-behind.enable", true),
+                                                 plugin.getConfig().getInt("database.write-behind.batch-size", 100),
+                                                 plugin.getConfig().getLong("database.write-behind.flush-latency-ms", 50));
+    this.purchaseLogWriter = new PurchaseLogWriter(manager, plugin.logger(),
+                                                   plugin.getConfig().getInt("database.log-writer.buffer-size", 4096),
+                                                   plugin.getConfig().getInt("database.log-writer.batch-size", 256),
+                                                   plugin.getConfig().getLong("database.log-writer.flush-interval-ms", 1000),
+                                                   parseOverflowPolicy(plugin.getConfig().getString("database.log-writer.overflow-policy", "SPILL")),
+                                                   new File(plugin.getDataFolder(), "log-spill.jsonl"));
     //manager.setDebugMode(Util.isDevMode());
     checkTables();
     checkColumns();
     checkDatabaseVersion();
   }
 
+  /**
+   * Gets the write-behind queue that batches the database writes.
+   *
+   * @return The write-behind queue
+   */
+  @NotNull
+  public WriteBehindQueue getWriteBehindQueue() {
+
+    return writeBehindQueue;
+  }
+
+  /**
+   * Gets the writer of the purchase and transaction logs.
+   *
+   * @return The log writer
+   */
+  @NotNull
+  public PurchaseLogWriter getPurchaseLogWriter() {
+
+    return purchaseLogWriter;
+  }
+
+  /**
+   * Flushes all pending writes, must be called before the SQLManager shutdown.
+   */
+  public void shutdown() {
+
+    purchaseLogWriter.close();
+    writeBehindQueue.close();
+  }
+
+  @NotNull
+  private PurchaseLogWriter.OverflowPolicy parseOverflowPolicy(@Nullable final String name) {
+
+    try {
+      return PurchaseLogWriter.OverflowPolicy.valueOf(String.valueOf(name).toUpperCase(Locale.ROOT));
+    } catch(final IllegalArgumentException e) {
+      plugin.logger().warn("Invalid database.log-writer.overflow-policy {}, using SPILL instead.", name);
+      return PurchaseLogWriter.OverflowPolicy.SPILL;
+    }
+  }
+
+  @NotNull
+  private static String insertSQL(@NotNull final String verb, @NotNull final DataTables table, @NotNull final Collection<String> columns) {
+
+    final StringBuilder builder = new StringBuilder(verb).append(" INTO `").append(table.getName()).append("` (");
+    final StringBuilder values = new StringBuilder();
+    boolean first = true;
+    for(final String column : columns) {
+      if(!first) {
+        builder.append(", ");
+        values.append(", ");
+      }
+      builder.append('`').append(column).append('`');
+      values.append('?');
+      first = false;
+    }
+    return builder.append(") VALUES (").append(values).append(')').toString();
+  }
+
+  @NotNull
+  private static String deleteSQL(@NotNull final DataTables table, @NotNull final Collection<String> conditions) {
+
+    final StringBuilder builder = new StringBuilder("DELETE FROM `").append(table.getName()).append("` WHERE ");
+    boolean first = true;
+    for(final String column : conditions) {
+      if(!first) {
+        builder.append(" AND ");
+      }
+      builder.append('`').append(column).append("` = ?");
+      first = false;
+    }
+    return builder.toString();
+  }
+
   private void checkDatabaseVersion() {
 
     if(PackageUtil.parsePackageProperly("skipDatabaseVersionCheck").asBoolean(false)) {
@@ -139,51 +245,97 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
 
   public CompletableFuture<Integer> purgeIsolated() {
 
+    return purgeIsolated(false).thenApply(result->result.getLeft() + result.getRight());
+  }
+
+  /**
+   * Trims the shops that not mapped to any location and the data that not used by any shop or log.
+   * The isolated records are found by NOT EXISTS queries and deleted batch by batch, so neither the
+   * memory usage nor the connection holding time grows with the table size.
+   *
+   * @param dryRun Only count the isolated records without deleting them
+   *
+   * @return The count of isolated (or trimmed) shops and data
+   */
+  public CompletableFuture<Pair<Integer, Integer>> purgeIsolated(final boolean dryRun) {
+
     return CompletableFuture.supplyAsync(()->{
-      final List<Long> shop2ShopMapIds = listAllANotExistsInB(DataTables.SHOPS, "id", DataTables.SHOP_MAP, "shop");
-      final List<Long> shop2LogPurchaseIds = listAllANotExistsInB(DataTables.SHOPS, "id", DataTables.LOG_PURCHASE, "shop");
-      final List<Long> shop2LogChangesIds = listAllANotExistsInB(DataTables.SHOPS, "id", DataTables.LOG_CHANGES, "shop");
-      final List<Long> shop2Tags = listAllANotExistsInB(DataTables.SHOPS, "id", DataTables.TAGS, "shop");
-      final List<Long> shopAllIds = CommonUtil.linkLists(shop2LogChangesIds, shop2LogPurchaseIds, shop2Tags);
-      final List<Long> shopIsolatedFinal = new ArrayList<>(shop2ShopMapIds);
-      shopIsolatedFinal.retainAll(shopAllIds);
-      shopIsolatedFinal.forEach(isolatedShopId->{
-        try {
-          DataTables.SHOPS.createDelete().addCondition("id", isolatedShopId).build().execute();
-        } catch(SQLException e) {
-          Log.debug("Failed to delete: " + e.getMessage());
-        }
-      });
-      final List<Long> data2ShopIds = listAllANotExistsInB(DataTables.DATA, "id", DataTables.SHOPS, "data");
-      final List<Long> data2LogPurchaseIds = listAllANotExistsInB(DataTables.DATA, "id", DataTables.LOG_PURCHASE, "data");
-      final List<Long> dataIsolatedFinal = new ArrayList<>(data2ShopIds);
-      dataIsolatedFinal.retainAll(data2LogPurchaseIds);
-      dataIsolatedFinal.forEach(isolatedDataId->{
-        try {
-          DataTables.DATA.createDelete().addCondition("id", isolatedDataId).build().execute();
-        } catch(SQLException e) {
-          Log.debug("Failed to delete: " + e.getMessage());
-        }
-      });
-      return shopIsolatedFinal.size() + dataIsolatedFinal.size();
+      int shops = 0;
+      int data = 0;
+      try {
+        shops = purgeIsolatedRows(DataTables.SHOPS, isolatedShopCondition("a"), dryRun);
+        // The shops trimmed above no longer use their data, dry run has to exclude them manually
+        final String shopUsingData = dryRun? "SELECT 1 FROM " + DataTables.SHOPS.getName() + " s WHERE s.`data` = a.`id` AND NOT (" + isolatedShopCondition("s") + ")"
+                                           : "SELECT 1 FROM " + DataTables.SHOPS.getName() + " s WHERE s.`data` = a.`id`";
+        data = purgeIsolatedRows(DataTables.DATA, "NOT EXISTS (" + shopUsingData + ")"
+                                                  + " AND NOT EXISTS (SELECT 1 FROM " + DataTables.LOG_PURCHASE.getName() + " lp WHERE lp.`data` = a.`id`)", dryRun);
+      } catch(SQLException e) {
+        plugin.logger().warn("Failed to trim the isolated records!", e);
+      }
+      return Pair.of(shops, data);
     }, QuickExecutor.getCommonExecutor());
   }
 
   @NotNull
-  public List<Long> listAllANotExistsInB(final DataTables aTable, final String aId, final DataTables bTable, final String bId) {
+  private String isolatedShopCondition(@NotNull final String alias) {
 
-    final List<Long> isolatedIds = new ArrayList<>();
-    final String SQL = "SELECT " + aId + " FROM " + aTable.getName() + " WHERE " + aId + " NOT IN (SELECT " + bId + " FROM " + bTable.getName() + ")";
-    try(SQLQuery query = manager.createQuery().withPreparedSQL(SQL).execute()) {
-      final ResultSet rs = query.getResultSet();
-      while(rs.next()) {
-        final long id = rs.getLong(aId);
-        isolatedIds.add(id);
+    return "NOT EXISTS (SELECT 1 FROM " + DataTables.SHOP_MAP.getName() + " m WHERE m.`shop` = " + alias + ".`id`)"
+           + " AND (NOT EXISTS (SELECT 1 FROM " + DataTables.LOG_CHANGES.getName() + " c WHERE c.`shop` = " + alias + ".`id`)"
+           + " OR NOT EXISTS (SELECT 1 FROM " + DataTables.LOG_PURCHASE.getName() + " p WHERE p.`shop` = " + alias + ".`id`)"
+           + " OR NOT EXISTS (SELECT 1 FROM " + DataTables.TAGS.getName() + " t WHERE t.`shop` = " + alias + ".`id`))";
+  }
+
+  /**
+   * Deletes the rows matching the condition, in batches ordered by id.
+   *
+   * @param table     The table
+   * @param condition The condition, the table is aliased as "a"
+   * @param dryRun    Only count the rows
+   *
+   * @return The count of matched (or deleted) rows
+   *
+   * @throws SQLException something going wrong
+   */
+  private int purgeIsolatedRows(@NotNull final DataTables table, @NotNull final String condition, final boolean dryRun) throws SQLException {
+
+    final long total;
+    try(Connection connection = manager.getConnection();
+        PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + table.getName() + " a WHERE " + condition);
+        ResultSet set = statement.executeQuery()) {
+      total = set.next()? set.getLong(1) : 0;
+    }
+    Log.debug("Found " + total + " isolated records in " + table.getName());
+    if(dryRun || total == 0) {
+      return (int)total;
+    }
+    final String selectSQL = "SELECT a.`id` FROM " + table.getName() + " a WHERE a.`id` > ? AND (" + condition + ") ORDER BY a.`id` LIMIT " + PURGE_BATCH_SIZE;
+    final List<Long> batches = LongStream.range(0, (total + PURGE_BATCH_SIZE - 1) / PURGE_BATCH_SIZE).boxed().toList();
+    long lastId = 0;
+    int deleted = 0;
+    for(final Long ignored : new ProgressMonitor<>(batches, progress->plugin.logger().info("Trimming isolated records in {}: batch {}/{}", table.getName(), progress.getLeft(), progress.getMiddle()))) {
+      final List<Long> ids = new ArrayList<>(PURGE_BATCH_SIZE);
+      // One connection per batch, don't hold it during the whole purge
+      try(Connection connection = manager.getConnection();
+          PreparedStatement select = connection.prepareStatement(selectSQL)) {
+        select.setLong(1, lastId);
+        try(ResultSet set = select.executeQuery()) {
+          while(set.next()) {
+            ids.add(set.getLong(1));
+          }
+        }
+        if(ids.isEmpty()) {
+          break;
+        }
+        lastId = ids.get(ids.size() - 1);
+        try(PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table.getName() + " WHERE `id` IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")")) {
+          for(int i = 0; i < ids.size(); i++) {
+            delete.setLong(i + 1, ids.get(i));
+          }
+          deleted += delete.executeUpdate();
+        }
       }
-    } catch(SQLException e) {
-      plugin.logger().warn("Failed to list all " + aTable.getName() + " not exists in " + bTable.getName() + "!", e);
     }
-    return isolatedIds;
+    return deleted;
   }
 
   private void fastBackup() {
@@ -302,41 +454,38 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
     final SimpleDataRecord simpleDataRecord = ((ContainerShop)shop).createDataRecord();
     return queryDataId(simpleDataRecord).thenCompose(id->{
       if(id == null) {
-        final Map<String, Object> map = simpleDataRecord.generateParams();
-        return DataTables.DATA.createInsert()
-                .setColumnNames(new ArrayList<>(map.keySet()))
-                .setParams(map.values())
-                .returnGeneratedKey(Long.class).executeFuture(i->i);
+        return insertData(simpleDataRecord);
       } else {
         return CompletableFuture.completedFuture(id);
       }
     });
   }
 
+  @NotNull
+  private CompletableFuture<@NotNull Long> insertData(@NotNull final SimpleDataRecord simpleDataRecord) {
+
+    final Map<String, Object> map = simpleDataRecord.generateParams();
+    return writeBehindQueue.submitReturningKey(insertSQL("INSERT", DataTables.DATA, map.keySet()), map.values().toArray());
+  }
+
   @Override
   @NotNull
   public CompletableFuture<@NotNull Long> createShop(final long dataId) {
 
     Validate.isTrue(dataId > 0, "Data ID must be greater than 0!");
-    return DataTables.SHOPS.createInsert()
-            .setColumnNames("data")
-            .setParams(dataId)
-            .returnGeneratedKey(Long.class)
-            .executeFuture(dat->dat);
+    return writeBehindQueue.submitReturningKey(insertSQL("INSERT", DataTables.SHOPS, List.of("data")), dataId);
   }
 
   @Override
   public CompletableFuture<@NotNull Void> createShopMap(final long shopId, @NotNull final Location location) {
 
     Validate.isTrue(shopId > 0, "Shop ID must be greater than 0!");
-    return DataTables.SHOP_MAP.createReplace()
-            .setColumnNames("world", "x", "y", "z", "shop")
-            .setParams(location.getWorld().getName(),
-                       location.getBlockX(),
-                       location.getBlockY(),
-                       location.getBlockZ(),
-                       shopId)
-            .executeFuture();
+    return writeBehindQueue.submit(insertSQL("REPLACE", DataTables.SHOP_MAP, List.of("world", "x", "y", "z", "shop")),
+                                   location.getWorld().getName(),
+                                   location.getBlockX(),
+                                   location.getBlockY(),
+                                   location.getBlockZ(),
+                                   shopId).thenApply(lines->null);
   }
 
   @Override
@@ -355,6 +504,53 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
             });
   }
 
+  @Override
+  public @NotNull CompletableFuture<@NotNull Map<Long, DataRecord>> getDataRecords(@NotNull final Collection<Long> dataIds) {
+
+    return queryDataRecordsIn("SELECT * FROM " + DataTables.DATA.getName() + " WHERE `id` IN ", "id", dataIds);
+  }
+
+  @Override
+  public @NotNull CompletableFuture<@NotNull Map<Long, DataRecord>> getShopDataRecords(@NotNull final Collection<Long> shopIds) {
+
+    return queryDataRecordsIn("SELECT d.*, s.`id` AS `qs_shop_id` FROM " + DataTables.DATA.getName() + " d INNER JOIN " + DataTables.SHOPS.getName()
+                              + " s ON s.`data` = d.`id` WHERE s.`id` IN ", "qs_shop_id", shopIds);
+  }
+
+  /**
+   * Queries the data records with the ids split into IN (...) lists, to stay under the parameters
+   * limit of the databases.
+   *
+   * @param sqlPrefix The SQL that selects the data columns, ends with "IN "
+   * @param keyColumn The column that the result mapped by
+   * @param ids       The ids
+   *
+   * @return The data records mapped by the key column
+   */
+  @NotNull
+  private CompletableFuture<@NotNull Map<Long, DataRecord>> queryDataRecordsIn(@NotNull final String sqlPrefix, @NotNull final String keyColumn, @NotNull final Collection<Long> ids) {
+
+    final List<Long> distinctIds = ids.stream().distinct().toList();
+    if(distinctIds.isEmpty()) {
+      return CompletableFuture.completedFuture(new HashMap<>());
+    }
+    return CompletableFuture.supplyAsync(()->{
+      final Map<Long, DataRecord> records = new HashMap<>(distinctIds.size());
+      for(final List<Long> partition : Lists.partition(distinctIds, BULK_QUERY_PARTITION_SIZE)) {
+        final String sql = sqlPrefix + "(" + String.join(", ", Collections.nCopies(partition.size(), "?")) + ")";
+        try(SQLQuery query = manager.createQuery().withPreparedSQL(sql).setParams(partition.toArray()).execute()) {
+          final ResultSet set = query.getResultSet();
+          while(set.next()) {
+            records.put(set.getLong(keyColumn), new SimpleDataRecord(plugin.getPlayerFinder(), set));
+          }
+        } catch(SQLException e) {
+          plugin.logger().warn("Failed to query the data records in bulk!", e);
+        }
+      }
+      return records;
+    }, QuickExecutor.getCommonExecutor());
+  }
+
   @Override
   @NotNull
   public CompletableFuture<@Nullable String> getPlayerLocale(@NotNull final UUID uuid) {
@@ -423,10 +619,8 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
   @Override
   public @NotNull CompletableFuture<@NotNull Integer> insertHistoryRecord(@NotNull final Object rec) {
 
-    return DataTables.LOG_OTHERS.createInsert()
-            .setColumnNames("type", "data")
-            .setParams(rec.getClass().getName(), JsonUtil.getGson().toJson(rec))
-            .executeFuture(lines->lines);
+    return writeBehindQueue.submit(insertSQL("INSERT", DataTables.LOG_OTHERS, List.of("type", "data")),
+                                   rec.getClass().getName(), JsonUtil.getGson().toJson(rec)).thenApply(Long::intValue);
   }
 
   @Override
@@ -436,14 +630,12 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
     plugin.getDatabaseHelper().locateShopDataId(metricRecord.getShopId()).whenCompleteAsync((dataId, err)->{
       if(err != null) {
         future.completeExceptionally(err);
+        return;
       }
-      DataTables.LOG_PURCHASE
-              .createInsert()
-              .setColumnNames("time", "shop", "data", "buyer", "type", "amount", "money", "tax")
-              .setParams(new Date(metricRecord.getTime()), metricRecord.getShopId()
-                      , dataId, metricRecord.getPlayer(), metricRecord.getType().name(),
-                         metricRecord.getAmount(), metricRecord.getTotal(), metricRecord.getTax())
-              .executeFuture(lines->lines).whenComplete((line, err2)->{
+      purchaseLogWriter.submit(PurchaseLogWriter.LogKind.PURCHASE, metricRecord.getTime(),
+                               metricRecord.getShopId(), dataId, metricRecord.getPlayer(), metricRecord.getType().name(),
+                               metricRecord.getAmount(), metricRecord.getTotal(), metricRecord.getTax())
+              .whenComplete((line, err2)->{
                 if(err2 != null) {
                   future.completeExceptionally(err2);
                 }
@@ -463,10 +655,9 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
     if(to == null) {
       to = CommonUtil.getNilUniqueId();
     }
-    DataTables.LOG_TRANSACTION.createInsert()
-            .setColumnNames("from", "to", "currency", "amount", "tax_amount", "tax_account", "error")
-            .setParams(from.toString(), to.toString(), currency, amount, taxAmount, taxAccount == null? null : taxAccount.toString(), error)
-            .executeAsync(handler->Log.debug("Operation completed, insertTransactionRecord, " + handler + " lines affected"));
+    purchaseLogWriter.submit(PurchaseLogWriter.LogKind.TRANSACTION, System.currentTimeMillis(),
+                             from.toString(), to.toString(), currency, amount, taxAmount, taxAccount == null? null : taxAccount.toString(), error)
+            .thenAccept(handler->Log.debug("Operation completed, insertTransactionRecord, " + handler + " lines affected"));
   }
 
   @Override
@@ -479,30 +670,57 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
   public @NotNull List<ShopRecord> listShops(@Nullable final String worldFilter, final boolean deleteIfCorrupt) {
 
     final List<ShopRecord> shopRecords = new ArrayList<>();
-    final String SQL = "SELECT * FROM " + DataTables.DATA.getName()
-                       + " INNER JOIN " + DataTables.SHOPS.getName()
-                       + " ON " + DataTables.DATA.getName() + ".id = " + DataTables.SHOPS.getName() + ".data"
-                       + " INNER JOIN " + DataTables.SHOP_MAP.getName()
-                       + " ON " + DataTables.SHOP_MAP.getName() + ".shop = " + DataTables.SHOPS.getName() + ".id";
-    try(SQLQuery query = manager.createQuery().withPreparedSQL(SQL).execute()) {
-      final ResultSet rs = query.getResultSet();
-      while(rs.next()) {
-        final String world = rs.getString("world");
-        if(worldFilter != null && !worldFilter.equals(world)) {
-          continue;
+    listShops(worldFilter, deleteIfCorrupt, shopRecords::add);
+    return shopRecords;
+  }
+
+  @Override
+  public void listShops(@Nullable final String worldFilter, final boolean deleteIfCorrupt, @NotNull final Consumer<ShopRecord> consumer) {
+
+    listShopsInWorlds(worldFilter == null? null : Collections.singletonList(worldFilter), deleteIfCorrupt, consumer);
+  }
+
+  @Override
+  public void listShopsInWorlds(@Nullable final Collection<String> worlds, final boolean deleteIfCorrupt, @NotNull final Consumer<ShopRecord> consumer) {
+
+    if(worlds != null && worlds.isEmpty()) {
+      return;
+    }
+    final StringBuilder SQL = new StringBuilder("SELECT * FROM " + DataTables.DATA.getName()
+                                                + " INNER JOIN " + DataTables.SHOPS.getName()
+                                                + " ON " + DataTables.DATA.getName() + ".id = " + DataTables.SHOPS.getName() + ".data"
+                                                + " INNER JOIN " + DataTables.SHOP_MAP.getName()
+                                                + " ON " + DataTables.SHOP_MAP.getName() + ".shop = " + DataTables.SHOPS.getName() + ".id");
+    if(worlds != null) {
+      // The world is the leading column of shop_map primary key, so the filter is an index range scan
+      SQL.append(" WHERE ").append(DataTables.SHOP_MAP.getName()).append(".world IN (")
+              .append(String.join(", ", Collections.nCopies(worlds.size(), "?"))).append(')');
+    }
+    try(Connection connection = manager.getConnection();
+        PreparedStatement statement = connection.prepareStatement(SQL.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      // MySQL driver buffers the whole result set unless the fetch size is Integer.MIN_VALUE
+      statement.setFetchSize(plugin.getDatabaseDriverType() == QuickShop.DatabaseDriverType.MYSQL? Integer.MIN_VALUE : LIST_SHOPS_FETCH_SIZE);
+      if(worlds != null) {
+        int index = 1;
+        for(final String world : worlds) {
+          statement.setString(index++, world);
+        }
+      }
+      try(ResultSet rs = statement.executeQuery()) {
+        while(rs.next()) {
+          final String world = rs.getString("world");
+          final long shopId = rs.getLong("shop");
+          final int x = rs.getInt("x");
+          final int y = rs.getInt("y");
+          final int z = rs.getInt("z");
+          final DataRecord dataRecord = new SimpleDataRecord(plugin.getPlayerFinder(), rs);
+          final InfoRecord infoRecord = new ShopInfo(shopId, world, x, y, z);
+          consumer.accept(new ShopRecord(dataRecord, infoRecord));
         }
-        final long shopId = rs.getLong("shop");
-        final int x = rs.getInt("x");
-        final int y = rs.getInt("y");
-        final int z = rs.getInt("z");
-        final DataRecord dataRecord = new SimpleDataRecord(plugin.getPlayerFinder(), rs);
-        final InfoRecord infoRecord = new ShopInfo(shopId, world, x, y, z);
-        shopRecords.add(new ShopRecord(dataRecord, infoRecord));
       }
     } catch(SQLException e) {
       plugin.logger().error("Failed to list shops", e);
     }
-    return shopRecords;
   }
 
   @Override
@@ -612,30 +830,21 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
   public @NotNull CompletableFuture<@NotNull Integer> removeData(final long dataId) {
 
     Validate.isTrue(dataId > 0, "Data ID must be greater than 0!");
-    return DataTables.DATA.createDelete()
-            .addCondition("id", dataId)
-            .build().executeFuture(lines->lines);
+    // Queued behind the pending inserts of the same table, so they never run out of order
+    return writeBehindQueue.submit(deleteSQL(DataTables.DATA, List.of("id")), dataId).thenApply(Long::intValue);
   }
 
   @Override
   public @NotNull CompletableFuture<@NotNull Integer> removeShop(final long shopId) {
 
     Validate.isTrue(shopId > 0, "Shop ID must be greater than 0!");
-    return DataTables.SHOPS.createDelete()
-            .addCondition("id", shopId)
-            .build().executeFuture(lines->lines);
+    return writeBehindQueue.submit(deleteSQL(DataTables.SHOPS, List.of("id")), shopId).thenApply(Long::intValue);
   }
 
   @Override
   public @NotNull CompletableFuture<@NotNull Integer> removeShopMap(@NotNull final String world, final int x, final int y, final int z) {
     // TODO: Execute isolated data check in async thread
-    return DataTables.SHOP_MAP.createDelete()
-            .addCondition("world", world)
-            .addCondition("x", x)
-            .addCondition("y", y)
-            .addCondition("z", z)
-            .build()
-            .executeFuture(lines->lines);
+    return writeBehindQueue.submit(deleteSQL(DataTables.SHOP_MAP, List.of("world", "x", "y", "z")), world, x, y, z).thenApply(Long::intValue);
   }
 
   @Override
@@ -735,10 +944,8 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
   public @NotNull CompletableFuture<@NotNull Integer> updateExternalInventoryProfileCache(final long shopId, final int space, final int stock) {
 
     Validate.isTrue(shopId > 0, "Shop ID must be greater than 0!");
-    return DataTables.EXTERNAL_CACHE.createReplace()
-            .setColumnNames("shop", "space", "stock")
-            .setParams(shopId, space, stock)
-            .executeFuture(lines->lines);
+    return writeBehindQueue.submit(insertSQL("REPLACE", DataTables.EXTERNAL_CACHE, List.of("shop", "space", "stock")),
+                                   shopId, space, stock).thenApply(Long::intValue);
   }
 
   @Override
@@ -752,23 +959,99 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
       Log.debug("Warning: Failed to update shop because the shop id locate result for " + loc + ", because the query shopId is " + shopId);
       return null;
     }
+    final String updateSQL = "UPDATE `" + DataTables.SHOPS.getName() + "` SET `data` = ? WHERE `id` = ?";
     return queryDataId(simpleDataRecord).thenCompose(dataId->{
       if(dataId != null) {
-        return DataTables.SHOPS.createUpdate()
-                .addCondition("id", shopId)
-                .setColumnValues("data", dataId)
-                .build()
-                .executeFuture();
+        return writeBehindQueue.submit(updateSQL, dataId, shopId).thenApply(lines->null);
       } else {
-        return createData(shop).thenCompose(createdDataId->DataTables.SHOPS.createUpdate()
-                .addCondition("id", shopId)
-                .setColumnValues("data", createdDataId)
-                .build()
-                .executeFuture());
+        return createData(shop).thenCompose(createdDataId->writeBehindQueue.submit(updateSQL, createdDataId, shopId).thenApply(lines->null));
       }
     });
   }
 
+  @Override
+  public CompletableFuture<Void> updateShops(@NotNull final Collection<Shop> shops) {
+
+    if(shops.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    // Take the snapshots now, the shops may change while we're waiting for the database
+    final List<Pair<Long, SimpleDataRecord>> records = new ArrayList<>(shops.size());
+    for(final Shop shop : shops) {
+      final long shopId = shop.getShopId();
+      if(shopId < 1) {
+        Log.debug("Warning: Skipping shop " + shop.getLocation() + " in batch update, because the shopId is " + shopId);
+        continue;
+      }
+      records.add(Pair.of(shopId, ((ContainerShop)shop).createDataRecord()));
+    }
+    final String updateSQL = "UPDATE `" + DataTables.SHOPS.getName() + "` SET `data` = ? WHERE `id` = ?";
+    return queryDataIds(records.stream().map(Pair::getValue).toList()).thenCompose(dataIds->{
+      final List<CompletableFuture<?>> futures = new ArrayList<>(records.size());
+      // Submitted back to back, so the write-behind queue flushes them as one batch
+      for(int i = 0; i < records.size(); i++) {
+        final Long dataId = dataIds.get(i);
+        if(dataId != null) {
+          futures.add(writeBehindQueue.submit(updateSQL, dataId, records.get(i).getKey()));
+        }
+      }
+      for(int i = 0; i < records.size(); i++) {
+        if(dataIds.get(i) == null) {
+          final long shopId = records.get(i).getKey();
+          futures.add(insertData(records.get(i).getValue()).thenCompose(createdDataId->writeBehindQueue.submit(updateSQL, createdDataId, shopId)));
+        }
+      }
+      return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }).thenRun(()->Log.debug("Batch updated " + records.size() + " shops."));
+  }
+
+  /**
+   * Finds the data records that have same values as the given records, with the digests looked up in
+   * IN (...) lists instead of one query per record.
+   *
+   * @param records The data records
+   *
+   * @return The data ids in the same order as the records, null if no data record found
+   */
+  @NotNull
+  private CompletableFuture<@NotNull List<@Nullable Long>> queryDataIds(@NotNull final List<SimpleDataRecord> records) {
+
+    if(records.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+    return CompletableFuture.supplyAsync(()->{
+      final List<Map<String, Object>> params = records.stream().map(SimpleDataRecord::generateLookupParams).toList();
+      final Map<String, List<Integer>> indexesByDigest = new HashMap<>();
+      for(int i = 0; i < params.size(); i++) {
+        indexesByDigest.computeIfAbsent((String)params.get(i).get("content_digest"), k->new ArrayList<>()).add(i);
+      }
+      final Long[] dataIds = new Long[records.size()];
+      for(final List<String> partition : Lists.partition(new ArrayList<>(indexesByDigest.keySet()), BULK_QUERY_PARTITION_SIZE)) {
+        final String sql = "SELECT * FROM " + DataTables.DATA.getName() + " WHERE `content_digest` IN (" + String.join(", ", Collections.nCopies(partition.size(), "?")) + ")";
+        try(SQLQuery query = manager.createQuery().withPreparedSQL(sql).setParams(partition.toArray()).execute()) {
+          final ResultSet set = query.getResultSet();
+          while(set.next()) {
+            final List<Integer> indexes = indexesByDigest.get(set.getString("content_digest"));
+            if(indexes == null) {
+              continue;
+            }
+            // Different contents may have the same digest, compare the columns too
+            final Map<String, Object> row = SimpleDataRecord.readContentParams(set);
+            final long id = set.getLong("id");
+            for(final int index : indexes) {
+              if(dataIds[index] == null && SimpleDataRecord.contentEquals(params.get(index), row)) {
+                dataIds[index] = id;
+              }
+            }
+          }
+        } catch(SQLException e) {
+          throw new IllegalStateException("Failed to query the data ids in bulk", e);
+        }
+      }
+      return Arrays.asList(dataIds);
+    }, QuickExecutor.getHikaricpExecutor());
+  }
+
   @Override
   public CompletableFuture<@NotNull ShopInventoryCountCache> queryInventoryCache(final long shopId) {
 
@@ -792,7 +1075,8 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
 
   @NotNull
   public CompletableFuture<@Nullable Long> queryDataId(@NotNull final SimpleDataRecord simpleDataRecord) {
-    // Check if dataRecord exists in database with same values
+    // Check if dataRecord exists in database with same values,
+    // the indexed content_digest narrows it down to one row and the other columns guard the digest collisions
     final Map<String, Object> lookupParams = simpleDataRecord.generateLookupParams();
     final TableQueryBuilder builder = DataTables.DATA.createQuery();
     builder.setLimit(1);
@@ -979,6 +1263,11 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
         parent.makeBackup();
         currentDatabaseVersion = 16;
       }
+      if(currentDatabaseVersion == 16) {
+        logger.info("Data upgrading: Creating the content digest column for the data table to improve performance...");
+        parent.upgradeDataDigest();
+        currentDatabaseVersion = 17;
+      }
       parent.setDatabaseVersion(currentDatabaseVersion).join();
     }
 
@@ -1018,6 +1307,62 @@ public class SimpleDatabaseHelperV2 implements DatabaseHelper {
   }
 
 
+  private void upgradeDataDigest() {
+
+    fastBackup();
+    try {
+      getManager().alterTable(DataTables.DATA.getName())
+              .addColumn("content_digest", "VARCHAR(64)")
+              .execute();
+    } catch(SQLException e) {
+      Log.debug("Failed to add content_digest column in " + DataTables.DATA.getName() + "! Err:" + e.getMessage());
+    }
+    try {
+      getManager().alterTable(DataTables.DATA.getName())
+              .addIndex(IndexType.INDEX, "idx_qs_data_digest", "content_digest")
+              .execute();
+    } catch(SQLException e) {
+      plugin.logger().warn("Cannot setup the table index", e);
+    }
+    // Fill the digest of existing records page by page, the table may be too large to read at once
+    final String selectSQL = "SELECT * FROM " + DataTables.DATA.getName() + " WHERE `content_digest` IS NULL AND `id` > ? ORDER BY `id` LIMIT 1000";
+    // The owner and tax_account are rewritten as what the new records serialized, or the lookups of
+    // the new records never match the records stored in legacy formats
+    final String updateSQL = "UPDATE " + DataTables.DATA.getName() + " SET `owner` = ?, `tax_account` = ?, `content_digest` = ? WHERE `id` = ?";
+    long lastId = 0;
+    int updated = 0;
+    try(Connection connection = manager.getConnection();
+        PreparedStatement selectStatement = connection.prepareStatement(selectSQL);
+        PreparedStatement updateStatement = connection.prepareStatement(updateSQL)) {
+      while(true) {
+        selectStatement.setLong(1, lastId);
+        int pageSize = 0;
+        try(ResultSet set = selectStatement.executeQuery()) {
+          while(set.next()) {
+            lastId = set.getLong("id");
+            final Map<String, Object> params = SimpleDataRecord.readContentParams(set);
+            params.put("owner", SimpleDataRecord.normalizeUser(plugin.getPlayerFinder(), (String)params.get("owner")));
+            params.put("tax_account", SimpleDataRecord.normalizeUser(plugin.getPlayerFinder(), (String)params.get("tax_account")));
+            updateStatement.setString(1, (String)params.get("owner"));
+            updateStatement.setString(2, (String)params.get("tax_account"));
+            updateStatement.setString(3, SimpleDataRecord.computeDigest(params));
+            updateStatement.setLong(4, lastId);
+            updateStatement.addBatch();
+            pageSize++;
+          }
+        }
+        if(pageSize == 0) {
+          break;
+        }
+        updateStatement.executeBatch();
+        updated += pageSize;
+        Log.debug("Filled the content digest of " + updated + " data records.");
+      }
+    } catch(SQLException e) {
+      plugin.logger().warn("Failed to fill the content digest of data records, the missing records won't be reused.", e);
+    }
+  }
+
   private record ShopInfo(long shopID, String world, int x, int y, int z) implements InfoRecord {
 
     @Override
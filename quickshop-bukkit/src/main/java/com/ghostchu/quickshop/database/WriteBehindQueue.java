@@ -0,0 +1,344 @@
+package com.ghostchu.quickshop.database;
+
+import cc.carm.lib.easysql.api.SQLManager;
+import com.ghostchu.quickshop.common.util.QuickExecutor;
+import com.ghostchu.quickshop.util.logger.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Write-behind queue for the database writes. Pending writes are flushed in the order they were
+ * submitted, the consecutive writes that share the same SQL (so the same {@link DataTables} entry
+ * and columns) are grouped into {@link PreparedStatement#addBatch()} /
+ * {@link PreparedStatement#executeBatch()} chunks in a single transaction, while each caller still
+ * gets its own future.
+ * <p>
+ * The inserts that need their generated key back are never batched, not all drivers (e.g. SQLite)
+ * return a key for every row in a batch.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+  private final SQLManager manager;
+  private final Logger logger;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long flushLatency;
+  private final Queue<PendingWrite> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+  @Nullable
+  private final ScheduledExecutorService flusher;
+  // Metrics
+  private final LongAdder flushedBatches = new LongAdder();
+  private final LongAdder flushedRows = new LongAdder();
+  private final LongAdder flushNanos = new LongAdder();
+  private final LongAdder fallbackBatches = new LongAdder();
+  private final AtomicLong maxBatchSize = new AtomicLong();
+  private volatile long lastFlushNanos;
+
+  /**
+   * Creates a write-behind queue.
+   *
+   * @param manager      The SQL manager to borrow connections from
+   * @param logger       The logger
+   * @param enabled      Whether batching enabled, writes will be executed one by one if disabled
+   * @param batchSize    The maximum rows in a single JDBC batch, reaching it triggers a flush
+   * @param flushLatency The maximum time (in milliseconds) a write can wait in the queue
+   */
+  public WriteBehindQueue(@NotNull final SQLManager manager, @NotNull final Logger logger, final boolean enabled, final int batchSize, final long flushLatency) {
+
+    this.manager = manager;
+    this.logger = logger;
+    this.enabled = enabled;
+    this.batchSize = Math.max(1, batchSize);
+    this.flushLatency = Math.max(1, flushLatency);
+    if(enabled) {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(r->{
+        final Thread thread = new Thread(r, "QuickShop-Hikari-WriteBehind");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.flusher.scheduleWithFixedDelay(this::flush, this.flushLatency, this.flushLatency, TimeUnit.MILLISECONDS);
+    } else {
+      this.flusher = null;
+    }
+  }
+
+  /**
+   * Queues a write.
+   *
+   * @param sql    The prepared SQL
+   * @param params The parameters
+   *
+   * @return The future that completes with the affected rows
+   */
+  @NotNull
+  public CompletableFuture<Long> submit(@NotNull final String sql, @Nullable final Object... params) {
+
+    return submit(new BatchKey(sql, false), params);
+  }
+
+  /**
+   * Queues an insert that need its generated key back.
+   *
+   * @param sql    The prepared INSERT SQL
+   * @param params The parameters
+   *
+   * @return The future that completes with the generated key
+   */
+  @NotNull
+  public CompletableFuture<Long> submitReturningKey(@NotNull final String sql, @Nullable final Object... params) {
+
+    return submit(new BatchKey(sql, true), params);
+  }
+
+  @NotNull
+  private CompletableFuture<Long> submit(@NotNull final BatchKey key, @Nullable final Object[] params) {
+
+    final PendingWrite write = new PendingWrite(key, params == null? new Object[0] : params, new CompletableFuture<>());
+    if(flusher == null || flusher.isShutdown()) {
+      CompletableFuture.runAsync(()->executeIndividually(key, List.of(write)), QuickExecutor.getHikaricpExecutor());
+      return callerFuture(write);
+    }
+    pending.offer(write);
+    if(pendingCount.incrementAndGet() >= batchSize && flushRequested.compareAndSet(false, true)) {
+      flusher.execute(this::flush);
+    }
+    return callerFuture(write);
+  }
+
+  /**
+   * Gets the future that handed to the caller, the callbacks of it run on the database executor
+   * instead of the flusher thread, so a callback that waits on another queued write can't block the
+   * flush that write waiting for.
+   *
+   * @param write The pending write
+   *
+   * @return The future for the caller
+   */
+  @NotNull
+  private CompletableFuture<Long> callerFuture(@NotNull final PendingWrite write) {
+
+    return write.future().thenApplyAsync(Function.identity(), QuickExecutor.getHikaricpExecutor());
+  }
+
+  /**
+   * Flushes all pending writes in the submission order, called by the flusher thread.
+   */
+  private void flush() {
+
+    flushRequested.set(false);
+    PendingWrite head = pending.poll();
+    while(head != null) {
+      final BatchKey key = head.key();
+      final List<PendingWrite> batch = new ArrayList<>();
+      batch.add(head);
+      head = pending.poll();
+      // Only the consecutive writes of same SQL can be grouped, or the writes will be reordered
+      while(!key.returnKey() && head != null && batch.size() < batchSize && head.key().equals(key)) {
+        batch.add(head);
+        head = pending.poll();
+      }
+      pendingCount.addAndGet(-batch.size());
+      try {
+        if(key.returnKey()) {
+          executeIndividually(key, batch);
+        } else {
+          executeBatch(key, batch);
+        }
+      } catch(final Throwable e) {
+        // Never let it escape, or the scheduled flush will be cancelled silently
+        logger.warn("Failed to flush {} database writes: {}", batch.size(), key.sql(), e);
+        failAll(batch, e);
+      }
+    }
+  }
+
+  private void executeBatch(@NotNull final BatchKey key, @NotNull final List<PendingWrite> batch) {
+
+    final long startTime = System.nanoTime();
+    boolean fallback = false;
+    try(Connection connection = manager.getConnection()) {
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try(PreparedStatement ps = connection.prepareStatement(key.sql())) {
+        for(final PendingWrite write : batch) {
+          bind(ps, write.params());
+          ps.addBatch();
+        }
+        final int[] counts = ps.executeBatch();
+        connection.commit();
+        for(int i = 0; i < batch.size(); i++) {
+          batch.get(i).future().complete((long)(i < counts.length? counts[i] : Statement.SUCCESS_NO_INFO));
+        }
+      } catch(final SQLException e) {
+        // Roll back the rows that the driver already executed, so the fallback never writes them twice
+        connection.rollback();
+        Log.debug("Batch write failed, falling back to execute " + batch.size() + " writes one by one: " + e.getMessage());
+        fallback = true;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } catch(final SQLException e) {
+      logger.warn("Failed to execute {} batched database writes: {}", batch.size(), key.sql(), e);
+      failAll(batch, e);
+    } catch(final RuntimeException e) {
+      logger.warn("Failed to execute {} batched database writes: {}", batch.size(), key.sql(), e);
+      failAll(batch, e);
+    } finally {
+      final long cost = System.nanoTime() - startTime;
+      lastFlushNanos = cost;
+      flushNanos.add(cost);
+      flushedBatches.increment();
+      flushedRows.add(batch.size());
+      maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+    }
+    if(fallback) {
+      fallbackBatches.increment();
+      executeIndividually(key, batch);
+    }
+  }
+
+  private void executeIndividually(@NotNull final BatchKey key, @NotNull final List<PendingWrite> writes) {
+
+    for(final PendingWrite write : writes) {
+      if(write.future().isDone()) {
+        continue;
+      }
+      try(Connection connection = manager.getConnection();
+          PreparedStatement ps = key.returnKey()? connection.prepareStatement(key.sql(), Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(key.sql())) {
+        bind(ps, write.params());
+        final int lines = ps.executeUpdate();
+        if(key.returnKey()) {
+          try(ResultSet set = ps.getGeneratedKeys()) {
+            if(!set.next()) {
+              throw new SQLException("No generated key returned");
+            }
+            write.future().complete(set.getLong(1));
+          }
+        } else {
+          write.future().complete((long)lines);
+        }
+      } catch(final SQLException | RuntimeException e) {
+        logger.warn("Failed to execute database write: {}", key.sql(), e);
+        write.future().completeExceptionally(e);
+      }
+    }
+  }
+
+  private void failAll(@NotNull final List<PendingWrite> writes, @NotNull final Throwable cause) {
+
+    for(final PendingWrite write : writes) {
+      write.future().completeExceptionally(cause);
+    }
+  }
+
+  private void bind(@NotNull final PreparedStatement ps, @NotNull final Object[] params) throws SQLException {
+
+    for(int i = 0; i < params.length; i++) {
+      final Object param = params[i];
+      if(param instanceof final Date date && !(param instanceof java.sql.Date)) {
+        ps.setTimestamp(i + 1, new Timestamp(date.getTime()));
+      } else {
+        ps.setObject(i + 1, param);
+      }
+    }
+  }
+
+  public int getPendingWrites() {
+
+    return pendingCount.get();
+  }
+
+  public long getFlushedBatches() {
+
+    return flushedBatches.sum();
+  }
+
+  public long getFlushedRows() {
+
+    return flushedRows.sum();
+  }
+
+  public long getFallbackBatches() {
+
+    return fallbackBatches.sum();
+  }
+
+  public long getMaxBatchSize() {
+
+    return maxBatchSize.get();
+  }
+
+  public double getAverageBatchSize() {
+
+    final long batches = flushedBatches.sum();
+    return batches == 0? 0 : (double)flushedRows.sum() / batches;
+  }
+
+  public double getAverageFlushMillis() {
+
+    final long batches = flushedBatches.sum();
+    return batches == 0? 0 : flushNanos.sum() / 1_000_000d / batches;
+  }
+
+  public double getLastFlushMillis() {
+
+    return lastFlushNanos / 1_000_000d;
+  }
+
+  public boolean isEnabled() {
+
+    return enabled;
+  }
+
+  /**
+   * Stops the flusher and writes everything still pending.
+   */
+  @Override
+  public void close() {
+
+    if(flusher == null) {
+      return;
+    }
+    flusher.shutdown();
+    try {
+      if(!flusher.awaitTermination(30, TimeUnit.SECONDS)) {
+        logger.warn("Timed out while waiting the database write-behind flusher stop.");
+      }
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  private record BatchKey(@NotNull String sql, boolean returnKey) {
+
+  }
+
+  private record PendingWrite(@NotNull BatchKey key, @NotNull Object[] params, @NotNull CompletableFuture<Long> future) {
+
+  }
+}
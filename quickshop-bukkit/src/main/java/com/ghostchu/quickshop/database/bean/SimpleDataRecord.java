@@ -3,21 +3,36 @@ package com.ghostchu.quickshop.database.bean;
 import com.ghostchu.quickshop.api.database.bean.DataRecord;
 import com.ghostchu.quickshop.api.obj.QUser;
 import com.ghostchu.quickshop.api.shop.PlayerFinder;
+import com.ghostchu.quickshop.common.util.CommonUtil;
 import com.ghostchu.quickshop.common.util.QuickExecutor;
 import com.ghostchu.quickshop.obj.QUserImpl;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import lombok.Data;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
 
 @Data
 public class SimpleDataRecord implements DataRecord {
 
+  /**
+   * The columns that covered by the content digest, the create_time is not a part of the content.
+   */
+  private static final List<String> DIGEST_COLUMNS = List.of("owner", "item", "name", "type", "currency", "price", "unlimited", "hologram", "tax_account", "permissions", "extra", "inv_wrapper", "inv_symbol_link", "benefit");
+
   private final QUser owner;
   private final String item;
   private final String name;
@@ -105,9 +120,125 @@ public class SimpleDataRecord implements DataRecord {
     map.put("inv_symbol_link", inventorySymbolLink);
     map.put("create_time", createTime);
     map.put("benefit", benefit);
+    map.put("content_digest", computeDigest(map));
     return map;
   }
 
+  /**
+   * Computes the content digest (SHA-256) of the given data record columns, the digest is stored in
+   * the indexed content_digest column so the lookup doesn't need to scan the TEXT columns.
+   * <p>
+   * Different contents may still have the same digest, so the lookup must compare the columns too.
+   *
+   * @param params The column values, as the same as {@link #generateParams()}
+   *
+   * @return The hex digest
+   */
+  @NotNull
+  public static String computeDigest(@NotNull final Map<String, ?> params) {
+
+    final Hasher hasher = Hashing.sha256().newHasher();
+    for(final String column : DIGEST_COLUMNS) {
+      final String canonical = canonical(column, params.get(column));
+      hasher.putString(column, StandardCharsets.UTF_8);
+      if(canonical == null) {
+        hasher.putByte((byte)0);
+        continue;
+      }
+      hasher.putByte((byte)1).putInt(canonical.length()).putString(canonical, StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Checks if the given data record columns have the same content, compared as the same as the
+   * digest computed.
+   *
+   * @param params      The column values, as the same as {@link #generateParams()}
+   * @param otherParams The other column values
+   *
+   * @return true if all the columns covered by the digest are same
+   */
+  public static boolean contentEquals(@NotNull final Map<String, ?> params, @NotNull final Map<String, ?> otherParams) {
+
+    for(final String column : DIGEST_COLUMNS) {
+      if(!Objects.equals(canonical(column, params.get(column)), canonical(column, otherParams.get(column)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Normalizes the stored user string to what {@link QUser#serialize()} writes, e.g. the legacy
+   * username or upper-cased UUID owners, so the stored records can match the new lookups.
+   *
+   * @param finder     The player finder, used to resolve the legacy usernames
+   * @param serialized The stored user string
+   *
+   * @return The normalized user string, or the given string if it can't be resolved
+   */
+  @Nullable
+  public static String normalizeUser(@NotNull final PlayerFinder finder, @Nullable final String serialized) {
+
+    if(serialized == null) {
+      return null;
+    }
+    if(CommonUtil.isUUID(serialized)) {
+      // Skip the deserialization, it looks up the username in background
+      return UUID.fromString(serialized).toString();
+    }
+    try {
+      return QUserImpl.deserialize(finder, serialized, QuickExecutor.getSecondaryProfileIoExecutor()).serialize();
+    } catch(final IllegalArgumentException e) {
+      return serialized;
+    }
+  }
+
+  @Nullable
+  private static String canonical(@NotNull final String column, @Nullable final Object value) {
+
+    if(value == null) {
+      return null;
+    }
+    if("price".equals(column) && value instanceof final Number number) {
+      // Same scale as the DECIMAL(32,2) column, so the digest of stored records can be computed again
+      return BigDecimal.valueOf(number.doubleValue()).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+    return String.valueOf(value);
+  }
+
+  /**
+   * Reads the columns that covered by the content digest at the current row of given ResultSet,
+   * without deserializing the users.
+   *
+   * @param set The ResultSet of data table
+   *
+   * @return The column values
+   *
+   * @throws SQLException If failed to read the columns
+   */
+  @NotNull
+  public static Map<String, Object> readContentParams(@NotNull final ResultSet set) throws SQLException {
+
+    final Map<String, Object> params = new HashMap<>();
+    params.put("owner", set.getString("owner"));
+    params.put("item", set.getString("item"));
+    params.put("name", set.getString("name"));
+    params.put("type", set.getInt("type"));
+    params.put("currency", set.getString("currency"));
+    params.put("price", set.getDouble("price"));
+    params.put("unlimited", set.getBoolean("unlimited"));
+    params.put("hologram", set.getBoolean("hologram"));
+    params.put("tax_account", set.getString("tax_account"));
+    params.put("permissions", set.getString("permissions"));
+    params.put("extra", set.getString("extra"));
+    params.put("inv_wrapper", set.getString("inv_wrapper"));
+    params.put("inv_symbol_link", set.getString("inv_symbol_link"));
+    params.put("benefit", set.getString("benefit"));
+    return params;
+  }
+
   @Override
   public @NotNull Date getCreateTime() {
 
@@ -33,7 +33,12 @@ public abstract class AbstractProtectionListener extends AbstractQSListener {
   @Nullable
   public Shop getShopNature(@NotNull final Location location, final boolean includeAttached) {
 
-    return includeAttached? plugin.getShopManager().getShopIncludeAttached(location) : plugin.getShopManager().getShop(location);
+    if(!plugin.getShopManager().mayRelateToShop(location)) {
+      return null;
+    }
+    final Shop shop = includeAttached? plugin.getShopManager().getShopIncludeAttached(location) : plugin.getShopManager().getShop(location);
+    plugin.getShopManager().recordShopLookup(shop != null);
+    return shop;
   }
 
   /**
@@ -61,12 +66,29 @@ public abstract class AbstractProtectionListener extends AbstractQSListener {
   @Nullable
   public Shop getShopRedstone(@NotNull final Location location, final boolean includeAttached) {
 
+    if(!plugin.getShopManager().mayRelateToShop(location)) {
+      return null;
+    }
+    final Shop shop;
     if(includeAttached) {
-      return plugin.getShopManager().getShopIncludeAttachedViaCache(location);
+      shop = plugin.getShopManager().getShopIncludeAttachedViaCache(location);
     } else {
-      return plugin.getShopManager().getShopViaCache(location);
+      shop = plugin.getShopManager().getShopViaCache(location);
     }
+    plugin.getShopManager().recordShopLookup(shop != null);
+    return shop;
+  }
+
+  /**
+   * Checks whether the block may be a shop, or the neighbour of a shop, without touching the world.
+   *
+   * @param location The block location
+   *
+   * @return false if the block definitely not related to any shop
+   */
+  public boolean mayRelateToShop(@NotNull final Location location) {
 
+    return plugin.getShopManager().mayRelateToShop(location);
   }
 
 }
@@ -6,9 +6,11 @@ import com.ghostchu.quickshop.api.event.ShopPreCreateEvent;
 import com.ghostchu.quickshop.api.inventory.InventoryWrapper;
 import com.ghostchu.quickshop.api.obj.QUser;
 import com.ghostchu.quickshop.api.shop.Info;
+import com.ghostchu.quickshop.api.shop.PriceStatistics;
 import com.ghostchu.quickshop.api.shop.Shop;
 import com.ghostchu.quickshop.api.shop.ShopAction;
 import com.ghostchu.quickshop.api.shop.ShopManager;
+import com.ghostchu.quickshop.api.shop.ShopType;
 import com.ghostchu.quickshop.api.shop.permission.BuiltInShopPermission;
 import com.ghostchu.quickshop.menu.ShopKeeperMenu;
 import com.ghostchu.quickshop.obj.QUserImpl;
@@ -31,6 +33,7 @@ import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Sound;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
@@ -395,6 +398,15 @@ public class PlayerListener extends AbstractQSListener {
                      plugin.isAllowStack() &&
                      plugin.perm().hasPermission(player, "quickshop.create.stacks")
                      ? stack.getAmount() : 1).send();
+    if(plugin.getConfig().getBoolean("shop.price-suggestion-on-create", true)) {
+      final ShopType shopType = action == ShopAction.CREATE_BUY? ShopType.BUYING : ShopType.SELLING;
+      final PriceStatistics statistics = plugin.getShopManager().queryPriceStatistics(stack, shopType, null, null);
+      if(statistics.count() >= 3) {
+        final World world = block.getWorld();
+        plugin.text().of(player, "price-suggest", statistics.count(), plugin.getShopManager().format(statistics.max(), world, null), plugin.getShopManager().format(statistics.min(), world, null),
+                         plugin.getShopManager().format(statistics.average(), world, null), plugin.getShopManager().format(statistics.median(), world, null), plugin.getShopManager().format(statistics.median(), world, null)).send();
+      }
+    }
     return false;
   }
 
@@ -75,6 +75,9 @@ public class ShopProtectionListener extends AbstractProtectionListener {
   @Nullable
   private Shop getShopNextTo(@NotNull final Location loc) {
 
+    if(!mayRelateToShop(loc)) {
+      return null;
+    }
     final Block b = Util.getAttached(loc.getBlock());
     // Util.getAttached(b)
     if(b == null) {
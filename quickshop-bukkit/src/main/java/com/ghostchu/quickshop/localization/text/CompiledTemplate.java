@@ -0,0 +1,81 @@
+package com.ghostchu.quickshop.localization.text;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A language string that already parsed by MiniMessage, with the argument slots ({0}, {1}...) it
+ * contains, so rendering only needs to substitute the slots instead of parsing the string again.
+ */
+final class CompiledTemplate {
+
+  private static final Pattern SLOT_PATTERN = Pattern.compile("\\{(\\d{1,3})}");
+  private final Component component;
+  private final int[] slots;
+
+  private CompiledTemplate(@NotNull final Component component, final int[] slots) {
+
+    this.component = component;
+    this.slots = slots;
+  }
+
+  /**
+   * Parses the language string.
+   *
+   * @param miniMessage  The MiniMessage instance
+   * @param raw          The language string
+   * @param tagResolvers The tag resolvers
+   *
+   * @return The compiled template
+   */
+  @NotNull
+  static CompiledTemplate compile(@NotNull final MiniMessage miniMessage, @NotNull final String raw, @NotNull final TagResolver[] tagResolvers) {
+
+    final BitSet found = new BitSet();
+    final Matcher matcher = SLOT_PATTERN.matcher(raw);
+    while(matcher.find()) {
+      found.set(Integer.parseInt(matcher.group(1)));
+    }
+    return new CompiledTemplate(miniMessage.deserialize(raw, tagResolvers).compact(), found.stream().toArray());
+  }
+
+  @NotNull
+  Component getComponent() {
+
+    return component;
+  }
+
+  /**
+   * Substitutes the slots of this template that present in given component, same as
+   * {@link com.ghostchu.quickshop.util.MsgUtil#fillArgs(Component, Component...)} but skips the
+   * slots that the template doesn't have.
+   *
+   * @param text The component that rendered from this template
+   * @param args The arguments
+   *
+   * @return The component with the slots substituted
+   */
+  @NotNull
+  Component fill(@NotNull Component text, @NotNull final Component[] args) {
+
+    boolean replaced = false;
+    for(final int slot : slots) {
+      if(slot >= args.length) {
+        break;
+      }
+      text = text.replaceText(TextReplacementConfig.builder()
+                                      .matchLiteral("{" + slot + "}")
+                                      .replacement(args[slot] == null? Component.empty() : args[slot])
+                                      .build());
+      replaced = true;
+    }
+    return replaced? text.compact() : text;
+  }
+}
@@ -84,6 +84,11 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
   private final Map<Locale, NumberFormat> numberFormatCache = new HashMap<>();
   private final Cache<String, String> languagesCache =
           CacheBuilder.newBuilder().expireAfterAccess(30, TimeUnit.MINUTES).recordStats().build();
+  // <(Locale, Path), Parsed language string>
+  private final Cache<TemplateKey, CompiledTemplate> templateCache =
+          CacheBuilder.newBuilder().maximumSize(PackageUtil.parsePackageProperly("textTemplateCacheSize").asInteger(8192)).recordStats().build();
+  private final Cache<TemplateKey, List<CompiledTemplate>> templateListCache =
+          CacheBuilder.newBuilder().maximumSize(PackageUtil.parsePackageProperly("textTemplateCacheSize").asInteger(8192)).recordStats().build();
   private final String crowdinHost;
   private TagResolver[] tagResolvers;
   @Nullable
@@ -199,7 +204,8 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     if(PackageUtil.parsePackageProperly("fixClientItemTextRenderAlwaysItalic").asBoolean(true)) {
       postProcessors.add(new FixClientItemItalicRenderProcessor());
     }
-
+    // The templates may be compiled while loading, drop them since the files changed since then
+    invalidateTemplates();
   }
 
   private void initTagResolvers() {
@@ -243,11 +249,63 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
   private void reset() {
 
     languagesCache.cleanUp();
+    invalidateTemplates();
     languageFilesManager.reset();
     postProcessors.clear();
     availableLanguages.clear();
   }
 
+  /**
+   * Drops all compiled templates, must be called after the language files changed.
+   */
+  public void invalidateTemplates() {
+
+    templateCache.invalidateAll();
+    templateListCache.invalidateAll();
+  }
+
+  /**
+   * Gets the compiled template of the language key.
+   *
+   * @param locale       The locale that index belongs to
+   * @param index        The language file
+   * @param path         The language key path
+   * @param tagResolvers The tag resolvers
+   *
+   * @return The compiled template, null if the key not exists
+   */
+  @Nullable
+  private CompiledTemplate getTemplate(@NotNull final String locale, @NotNull final FileConfiguration index, @NotNull final String path, @NotNull final TagResolver[] tagResolvers) {
+
+    final TemplateKey key = new TemplateKey(locale, path);
+    CompiledTemplate template = templateCache.getIfPresent(key);
+    if(template == null) {
+      final String str = index.getString(path);
+      if(str == null) {
+        return null;
+      }
+      template = CompiledTemplate.compile(plugin.getPlatform().miniMessage(), str, tagResolvers);
+      templateCache.put(key, template);
+    }
+    return template;
+  }
+
+  @Nullable
+  private List<CompiledTemplate> getTemplateList(@NotNull final String locale, @NotNull final FileConfiguration index, @NotNull final String path, @NotNull final TagResolver[] tagResolvers) {
+
+    final TemplateKey key = new TemplateKey(locale, path);
+    List<CompiledTemplate> templates = templateListCache.getIfPresent(key);
+    if(templates == null) {
+      final List<String> str = index.getStringList(path);
+      if(str.isEmpty()) {
+        return null;
+      }
+      templates = str.stream().map(s->CompiledTemplate.compile(plugin.getPlatform().miniMessage(), s, tagResolvers)).toList();
+      templateListCache.put(key, templates);
+    }
+    return templates;
+  }
+
   @NotNull
   private FileConfiguration loadBuiltInFallback() {
 
@@ -397,6 +455,10 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     joiner.add(meta.render());
     joiner.add("<h5>Caching</h5>");
     joiner.add(GuavaCacheRender.renderTable(languagesCache.stats()));
+    joiner.add("<h5>Template Caching</h5>");
+    joiner.add(GuavaCacheRender.renderTable(templateCache.stats()));
+    joiner.add("<h5>Template List Caching</h5>");
+    joiner.add(GuavaCacheRender.renderTable(templateListCache.stats()));
     joiner.add("<h5>Post Processors</h5>");
     final HTMLTable postProcessorsTable = new HTMLTable(1, false);
     postProcessorsTable.setTableTitle("Registered Processors");
@@ -524,6 +586,7 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     }
     configuration.set(path, text);
     languageFilesManager.deploy(locale, configuration);
+    invalidateTemplates();
   }
 
   @Override
@@ -816,7 +879,8 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     @NotNull
     public List<Component> forLocale(@NotNull final String locale) {
 
-      final FileConfiguration index = mapping.get(manager.findRelativeLanguages(locale).getLocale());
+      final String relativeLocale = manager.findRelativeLanguages(locale).getLocale();
+      final FileConfiguration index = mapping.get(relativeLocale);
       if(index == null) {
         Log.debug("Fallback " + locale + " to default game-language locale caused by QuickShop doesn't support this locale");
         final String languageCode = MsgUtil.getDefaultGameLanguageCode();
@@ -827,13 +891,12 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
           return forLocale(languageCode);
         }
       } else {
-        final List<String> str = index.getStringList(path);
-        if(str.isEmpty()) {
+        final List<CompiledTemplate> templates = manager.getTemplateList(relativeLocale, index, path, tagResolvers);
+        if(templates == null) {
           Log.debug("Fallback Missing Language Key: " + path + ", report to QuickShop!");
           return Collections.singletonList(LegacyComponentSerializer.legacySection().deserialize(path));
         }
-        final List<Component> components = str.stream().map(s->manager.plugin.getPlatform().miniMessage().deserialize(s, tagResolvers)).toList();
-        return postProcess(components);
+        return postProcess(templates);
       }
     }
 
@@ -888,21 +951,23 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     /**
      * Post processes the text
      *
-     * @param text The text
+     * @param templates The compiled templates of the text
      *
      * @return The text that processed
      */
     @NotNull
-    private List<Component> postProcess(@NotNull final List<Component> text) {
+    private List<Component> postProcess(@NotNull final List<CompiledTemplate> templates) {
 
-      return text.stream().map(this::postProcess).toList();
+      return templates.stream().map(this::postProcess).toList();
     }
 
-    private Component postProcess(Component component) {
+    private Component postProcess(@NotNull final CompiledTemplate template) {
 
+      Component component = template.getComponent();
       for(final PostProcessor postProcessor : this.manager.postProcessors) {
         try {
-          component = postProcessor.process(component, sender, args);
+          // The template knows its slots, fill them directly instead of searching all the arguments
+          component = postProcessor instanceof FillerProcessor? template.fill(component, args) : postProcessor.process(component, sender, args);
         } catch(Throwable th) {
           Log.debug("Failed to post processing text: " + component + " caused by " + th.getMessage() + " handler: " + postProcessor.getClass().getName());
         }
@@ -970,7 +1035,8 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     @NotNull
     public Component forLocale(@NotNull final String locale) {
 
-      final FileConfiguration index = mapping.get(manager.findRelativeLanguages(locale).getLocale());
+      final String relativeLocale = manager.findRelativeLanguages(locale).getLocale();
+      final FileConfiguration index = mapping.get(relativeLocale);
       if(index == null) {
         Log.debug("Index for " + locale + " is null");
         Log.debug("Fallback " + locale + " to default game-language locale caused by QuickShop doesn't support this locale");
@@ -981,8 +1047,8 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
           return forLocale(MsgUtil.getDefaultGameLanguageCode());
         }
       } else {
-        final String str = index.getString(path);
-        if(str == null) {
+        final CompiledTemplate template = manager.getTemplate(relativeLocale, index, path, tagResolvers);
+        if(template == null) {
           Log.debug("The value about index " + index + " is null");
           Log.debug("Missing Language Key: " + path + ", report to QuickShop!");
           final StringJoiner joiner = new StringJoiner(".");
@@ -993,8 +1059,7 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
           }
           return LegacyComponentSerializer.legacySection().deserialize(path);
         }
-        final Component component = manager.plugin.getPlatform().miniMessage().deserialize(str, tagResolvers);
-        return postProcess(component);
+        return postProcess(template);
       }
     }
 
@@ -1072,16 +1137,18 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     /**
      * Post processes the text
      *
-     * @param text The text
+     * @param template The compiled template of the text
      *
      * @return The text that processed
      */
     @NotNull
-    private Component postProcess(@NotNull Component text) {
+    private Component postProcess(@NotNull final CompiledTemplate template) {
 
+      Component text = template.getComponent();
       for(final PostProcessor postProcessor : this.manager.postProcessors) {
         try {
-          text = postProcessor.process(text, sender, args);
+          // The template knows its slots, fill them directly instead of searching all the arguments
+          text = postProcessor instanceof FillerProcessor? template.fill(text, args) : postProcessor.process(text, sender, args);
         } catch(Exception e) {
           Log.debug("Error occurred while processing text: " + PlainTextComponentSerializer.plainText().serialize(text) + " caused by" + e.getMessage() + ", handler: " + postProcessor.getClass().getName());
         }
@@ -1090,4 +1157,7 @@ public class SimpleTextManager implements TextManager, Reloadable, SubPasteItem
     }
   }
 
+  private record TemplateKey(String locale, String path) {
+
+  }
 }
@@ -205,11 +205,12 @@ public class MainPage {
                                              .build());
         }
 
+        // Resolve the data records of this page in bulk instead of one query per record
+        final List<Long> pageDataIds = queryResult.subList(Math.min(start, queryResult.size()), Math.min(start + items, queryResult.size()))
+                .stream().map(ShopHistory.ShopHistoryRecord::dataId).toList();
+        final Map<Long, DataRecord> pageDataRecords = QuickShop.getInstance().getDatabaseHelper().getDataRecords(pageDataIds).join();
         int i = 0;
         for(final ShopHistory.ShopHistoryRecord record : queryResult) {
-          final String userName = QUserImpl.createSync(QuickShop.getInstance().getPlayerFinder(), record.buyer()).getDisplay();
-          final DataRecord dataRecord = QuickShop.getInstance().getDatabaseHelper().getDataRecord(record.dataId()).join();
-
           if(i < start) {
 
             i++;
@@ -218,7 +219,13 @@ public class MainPage {
           }
           if(i >= (start + items)) break;
 
+          DataRecord dataRecord = pageDataRecords.get(record.dataId());
+          if(dataRecord == null) {
+            // The page shifted by the records that missing data, fallback to the single lookup
+            dataRecord = QuickShop.getInstance().getDatabaseHelper().getDataRecord(record.dataId()).join();
+          }
           if(dataRecord == null) continue;
+          final String userName = QUserImpl.createSync(QuickShop.getInstance().getPlayerFinder(), record.buyer()).getDisplay();
           int max = 64;
           String type = "STONE";
           Component itemName;
@@ -59,7 +59,7 @@ public class PAPICache implements Reloadable {
 
   private long getShopsInWorld(@NotNull final String world, final boolean loadedOnly) {
 
-    return plugin.getShopManager().getAllShops().stream()
+    return plugin.getShopManager().streamShops(false)
             .filter(shop->shop.getLocation().getWorld() != null)
             .filter(shop->shop.getLocation().getWorld().getName().equals(world))
             .filter(shop->!loadedOnly || shop.isLoaded())
@@ -90,7 +90,7 @@ public class PAPICache implements Reloadable {
 
   private long getPlayerShopsInventoryUnavailable(@NotNull final UUID uuid) {
 
-    return plugin.getShopManager().getAllShops(uuid).stream()
+    return plugin.getShopManager().getOwnedShops(uuid).stream()
             .filter(Shop::inventoryAvailable)
             .count();
   }
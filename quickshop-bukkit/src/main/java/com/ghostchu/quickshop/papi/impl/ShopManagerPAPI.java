@@ -9,7 +9,7 @@ import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.util.Collection;
 import java.util.UUID;
 
 public class ShopManagerPAPI implements PAPISubHandler {
@@ -85,17 +85,16 @@ public class ShopManagerPAPI implements PAPISubHandler {
     if(passThroughArgsChild.length < 1) {
       return null;
     }
-    final List<Shop> allShops = shopManager.getAllShops();
     return String.valueOf(switch(passThroughArgsChild[0]) {
-      case "all" -> allShops.size();
+      case "all" -> shopManager.streamShops(false).count();
       case "selling" ->
-              allShops.stream().filter(shop->shop.getShopType() == ShopType.SELLING).count();
+              shopManager.streamShops(false).filter(shop->shop.getShopType() == ShopType.SELLING).count();
       case "buying" ->
-              allShops.stream().filter(shop->shop.getShopType() == ShopType.BUYING).count();
+              shopManager.streamShops(false).filter(shop->shop.getShopType() == ShopType.BUYING).count();
       case "freeze" ->
-              allShops.stream().filter(shop->shop.getShopType() == ShopType.FROZEN).count();
+              shopManager.streamShops(false).filter(shop->shop.getShopType() == ShopType.FROZEN).count();
       case "loaded" -> shopManager.getLoadedShops().size();
-      case "unloaded" -> allShops.size() - shopManager.getLoadedShops().size();
+      case "unloaded" -> shopManager.streamShops(false).count() - shopManager.getLoadedShops().size();
       default -> null;
     });
   }
@@ -106,7 +105,7 @@ public class ShopManagerPAPI implements PAPISubHandler {
     if(passThroughArgsChild.length < 1) {
       return null;
     }
-    final List<Shop> belongToPlayers = shopManager.getAllShops(player);
+    final Collection<Shop> belongToPlayers = shopManager.getOwnedShops(player);
     return String.valueOf(switch(passThroughArgsChild[0]) {
       case "all" -> belongToPlayers.size();
       case "selling" ->
@@ -3,14 +3,16 @@ package com.ghostchu.quickshop.shop;
 import com.ghostchu.quickshop.QuickShop;
 import com.ghostchu.quickshop.api.event.ShopCreateSuccessEvent;
 import com.ghostchu.quickshop.api.obj.QUser;
+import com.ghostchu.quickshop.api.shop.PriceStatistics;
 import com.ghostchu.quickshop.api.shop.Shop;
 import com.ghostchu.quickshop.api.shop.ShopChunk;
 import com.ghostchu.quickshop.api.shop.ShopManager;
+import com.ghostchu.quickshop.api.shop.ShopType;
 import com.ghostchu.quickshop.api.shop.cache.ShopCache;
 import com.ghostchu.quickshop.api.shop.cache.ShopCacheNamespacedKey;
 import com.ghostchu.quickshop.api.shop.cache.ShopInventoryCountCache;
 import com.ghostchu.quickshop.common.util.QuickExecutor;
-import com.ghostchu.quickshop.shop.cache.BoxedShop;
+import com.ghostchu.quickshop.shop.cache.ShopInventorySnapshotTable;
 import com.ghostchu.quickshop.shop.cache.SimpleShopCache;
 import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.economyformatter.EconomyFormatter;
@@ -25,31 +27,40 @@ import io.papermc.lib.PaperLib;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.BoundingBox;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // This class is extract from SimpleShopManager because it is too big...
 @ApiStatus.Experimental
@@ -57,6 +68,18 @@ public abstract class AbstractShopManager implements ShopManager {
 
   @Getter
   protected ShopCache shopCache;
+  // Rejects the blocks that can't be a shop before the protection listeners look them up
+  @Getter
+  protected final ShopOccupancyFilter occupancyFilter = new ShopOccupancyFilter();
+  // Item terms to shops, so /qs find doesn't need to match the item of every shop
+  @Getter
+  protected final ShopItemSearchIndex itemSearchIndex = new ShopItemSearchIndex();
+  // Prices grouped by item, type and currency, so the price suggestions don't need to scan the shops
+  @Getter
+  protected final ShopPriceStatistics priceStatistics;
+  // Last counted stock and space, so the off-thread readers don't block on the database
+  @Getter
+  protected final ShopInventorySnapshotTable inventorySnapshots = new ShopInventorySnapshotTable();
   protected static final DecimalFormat STANDARD_FORMATTER = new DecimalFormat("#.#########");
   // the performance impact on busy server
   protected final Cache<UUID, Shop> shopRuntimeUUIDCaching =
@@ -71,6 +94,12 @@ public abstract class AbstractShopManager implements ShopManager {
   protected final EconomyFormatter formatter;
   protected final Map<String, Map<ShopChunk, Map<Location, Shop>>> shops = Maps.newConcurrentMap();
   protected final Set<Shop> loadedShops = Sets.newConcurrentHashSet(); // Handle it by collection to reduce
+  // Primary key index, so getShop(long) don't need to walk the whole world-chunk-location map
+  protected final Map<Long, Shop> shopsById = Maps.newConcurrentMap();
+  // Owner index, keyed by ownerIndexKey because QUser#hashCode doesn't agree with QUser#equals
+  protected final Map<Object, Map<Location, Shop>> shopsByOwner = Maps.newConcurrentMap();
+  // Shops waiting for save, ContainerShop deduplicates itself before offering
+  protected final Queue<ContainerShop> dirtyShops = new ConcurrentLinkedQueue<>();
 
 
   public AbstractShopManager(@NotNull final QuickShop plugin) {
@@ -78,15 +107,22 @@ public abstract class AbstractShopManager implements ShopManager {
     Util.ensureThread(false);
     this.plugin = plugin;
     this.formatter = new EconomyFormatter(plugin, plugin::getEconomy);
-
+    this.priceStatistics = new ShopPriceStatistics(plugin);
+    plugin.getPasteManager().register(plugin.getJavaPlugin(), occupancyFilter);
+    plugin.getPasteManager().register(plugin.getJavaPlugin(), itemSearchIndex);
+    plugin.getPasteManager().register(plugin.getJavaPlugin(), priceStatistics);
+    plugin.getPasteManager().register(plugin.getJavaPlugin(), inventorySnapshots);
   }
 
   public void init() {
 
-    final Map<@NotNull ShopCacheNamespacedKey, @NotNull Pair<@NotNull Function<Location, Shop>, @Nullable Cache<Location, BoxedShop>>> map = new HashMap<>();
+    final Map<@NotNull ShopCacheNamespacedKey, @NotNull Function<Location, Shop>> map = new HashMap<>();
     // SINGLE
-    map.put(ShopCacheNamespacedKey.SINGLE, new ImmutablePair<>(this::getShop, null));
-    map.put(ShopCacheNamespacedKey.INCLUDE_ATTACHED, new ImmutablePair<>(this::getShopIncludeAttached, null));
+    map.put(ShopCacheNamespacedKey.SINGLE, this::getShop);
+    map.put(ShopCacheNamespacedKey.INCLUDE_ATTACHED, this::getShopIncludeAttached);
+    if(shopCache instanceof final SimpleShopCache oldCache) {
+      oldCache.shutdown();
+    }
     shopCache = new SimpleShopCache(plugin, map);
   }
 
@@ -113,7 +149,171 @@ public abstract class AbstractShopManager implements ShopManager {
     // That chunk data hasn't been created yet - Create it!
     // Put it in the world
     // Put the shop in its location in the chunk list.
-    inChunk.put(shop.getLocation(), shop);
+    if(inChunk.put(shop.getLocation(), shop) == null) {
+      occupancyFilter.add(shop.getLocation());
+    }
+    indexShopId(shop);
+    indexShopOwner(shop, shop.getOwner());
+    itemSearchIndex.add(shop);
+    priceStatistics.add(shop);
+    if(shop instanceof final ContainerShop containerShop) {
+      // The changes made while it not in lookup table were skipped by saveDirtyShops
+      containerShop.requeueIfDirty();
+    }
+  }
+
+  private boolean isInLookupTable(@NotNull final Shop shop) {
+
+    final Map<Location, Shop> inChunk = getShops(SimpleShopChunk.fromLocation(shop.getLocation()));
+    return inChunk != null && inChunk.get(shop.getLocation()) == shop;
+  }
+
+  @Override
+  public void indexShopId(@NotNull final Shop shop) {
+
+    final long shopId = shop.getShopId();
+    if(shopId == -1) {
+      return;
+    }
+    if(!isInLookupTable(shop)) {
+      // Not registered into lookup table, don't leak it into index
+      return;
+    }
+    shopsById.put(shopId, shop);
+  }
+
+  @Override
+  public void reindexShopOwner(@NotNull final Shop shop, @NotNull final QUser previousOwner) {
+
+    unindexShopOwner(shop, previousOwner);
+    if(!isInLookupTable(shop)) {
+      return;
+    }
+    indexShopOwner(shop, shop.getOwner());
+  }
+
+  @Override
+  public @NotNull Collection<Shop> searchShops(@NotNull final String worldName, @NotNull final String keyword) {
+
+    return itemSearchIndex.search(worldName, keyword);
+  }
+
+  @Override
+  public @NotNull Collection<Shop> searchShops(@NotNull final String worldName, @NotNull final Material material) {
+
+    return itemSearchIndex.searchMaterial(worldName, material);
+  }
+
+  @Override
+  public void reindexShopItem(@NotNull final Shop shop) {
+
+    if(!isInLookupTable(shop)) {
+      return;
+    }
+    itemSearchIndex.add(shop);
+    priceStatistics.add(shop);
+  }
+
+  @Override
+  public void reindexShopPrice(@NotNull final Shop shop) {
+
+    if(!isInLookupTable(shop)) {
+      return;
+    }
+    priceStatistics.add(shop);
+  }
+
+  @Override
+  public @NotNull PriceStatistics queryPriceStatistics(@NotNull final ItemStack item, @NotNull final ShopType shopType, @Nullable final String currency, @Nullable final Shop exclude) {
+
+    return priceStatistics.query(item, shopType, currency, exclude);
+  }
+
+  @Override
+  public boolean mayRelateToShop(@NotNull final Location location) {
+
+    return occupancyFilter.mightContain(location);
+  }
+
+  @Override
+  public void recordShopLookup(final boolean found) {
+
+    occupancyFilter.recordLookup(found);
+  }
+
+  private void indexShopOwner(@NotNull final Shop shop, @NotNull final QUser owner) {
+
+    // Add in the same atomic compute as unindexShopOwner drops the empty buckets, or the shop may be
+    // put into a bucket that just dropped while the shops loading in parallel
+    shopsByOwner.compute(ownerIndexKey(owner), (k, owned)->{
+      final Map<Location, Shop> bucket = owned == null? new MapMaker().initialCapacity(1).makeMap() : owned;
+      bucket.put(shop.getLocation(), shop);
+      return bucket;
+    });
+  }
+
+  private void unindexShopOwner(@NotNull final Shop shop, @NotNull final QUser owner) {
+
+    shopsByOwner.computeIfPresent(ownerIndexKey(owner), (k, owned)->{
+      owned.remove(shop.getLocation(), shop);
+      return owned.isEmpty()? null : owned;
+    });
+  }
+
+  @NotNull
+  private static Object ownerIndexKey(@NotNull final QUser owner) {
+
+    if(owner.isRealPlayer() && owner.getUniqueId() != null) {
+      return owner.getUniqueId();
+    }
+    return Objects.requireNonNullElse(owner.getUsername(), "");
+  }
+
+  @Override
+  public void markShopDirty(@NotNull final Shop shop) {
+
+    if(shop instanceof final ContainerShop containerShop) {
+      dirtyShops.offer(containerShop);
+    }
+  }
+
+  @Override
+  public @NotNull CompletableFuture<Integer> saveDirtyShops() {
+
+    final List<Shop> batch = new ArrayList<>();
+    final List<ContainerShop> skipped = new ArrayList<>();
+    ContainerShop shop;
+    while((shop = dirtyShops.poll()) != null) {
+      shop.dequeueDirty();
+      if(!shop.isDirty()) {
+        continue;
+      }
+      if(!isInLookupTable(shop)) {
+        // Will be queued again once it added to the lookup table
+        continue;
+      }
+      if(shop.beginBatchUpdate()) {
+        batch.add(shop);
+      } else {
+        // Still updating or not fully created, try it again on next save
+        skipped.add(shop);
+      }
+    }
+    // Queue them after the drain, or the loop above will poll them again
+    skipped.forEach(ContainerShop::requeueIfDirty);
+    if(batch.isEmpty()) {
+      return CompletableFuture.completedFuture(0);
+    }
+    return plugin.getDatabaseHelper().updateShops(batch)
+            .handle((v, throwable)->{
+              for(final Shop saved : batch) {
+                ((ContainerShop)saved).finishBatchUpdate(throwable);
+              }
+              if(throwable != null) {
+                throw new IllegalStateException("Failed to save " + batch.size() + " shops", throwable);
+              }
+              return batch.size();
+            });
   }
 
   @Override
@@ -198,7 +398,14 @@ public abstract class AbstractShopManager implements ShopManager {
     if(inChunk == null) {
       return;
     }
-    inChunk.remove(loc);
+    if(inChunk.remove(loc) != null) {
+      occupancyFilter.remove(loc);
+    }
+    shopsById.remove(shop.getShopId(), shop);
+    unindexShopOwner(shop, shop.getOwner());
+    itemSearchIndex.remove(shop);
+    priceStatistics.remove(shop);
+    inventorySnapshots.remove(shop.getShopId());
     shopCache.invalidate(null, shop.getLocation());
   }
 
@@ -288,6 +495,28 @@ public abstract class AbstractShopManager implements ShopManager {
     }
   }
 
+  @Override
+  public void forEachShop(@NotNull final Consumer<Shop> action) {
+
+    for(final Map<ShopChunk, Map<Location, Shop>> inWorld : shops.values()) {
+      for(final Map<Location, Shop> inChunk : inWorld.values()) {
+        inChunk.values().forEach(action);
+      }
+    }
+  }
+
+  @Override
+  public @NotNull Spliterator<Shop> shopSpliterator() {
+
+    return new ShopSpliterator(shops.values().spliterator(), null);
+  }
+
+  @Override
+  public @NotNull Stream<Shop> streamShops(final boolean parallel) {
+
+    return StreamSupport.stream(shopSpliterator(), parallel);
+  }
+
   /**
    * Get all loaded shops.
    *
@@ -311,26 +540,42 @@ public abstract class AbstractShopManager implements ShopManager {
   @Override
   public @NotNull List<Shop> getAllShops(@NotNull final QUser playerUUID) {
 
-    final List<Shop> playerShops = new ArrayList<>(10);
-    for(final Shop shop : getAllShops()) {
-      if(shop.getOwner().equals(playerUUID)) {
-        playerShops.add(shop);
-      }
-    }
-    return playerShops;
+    return new ArrayList<>(getOwnedShops(playerUUID));
   }
 
   @Override
   public @NotNull List<Shop> getAllShops(@NotNull final UUID playerUUID) {
 
-    final List<Shop> playerShops = new ArrayList<>(10);
-    for(final Shop shop : getAllShops()) {
-      final UUID shopUuid = shop.getOwner().getUniqueIdIfRealPlayer().orElse(null);
-      if(playerUUID.equals(shopUuid)) {
-        playerShops.add(shop);
-      }
+    return new ArrayList<>(getOwnedShops(playerUUID));
+  }
+
+  /**
+   * Get a players all shops from the owner index.
+   *
+   * @param owner The shop owner
+   *
+   * @return Unmodifiable live view of the shops owned by this owner
+   */
+  @Override
+  public @NotNull Collection<Shop> getOwnedShops(@NotNull final QUser owner) {
+
+    return ownedShopsView(ownerIndexKey(owner));
+  }
+
+  @Override
+  public @NotNull Collection<Shop> getOwnedShops(@NotNull final UUID owner) {
+
+    return ownedShopsView(owner);
+  }
+
+  @NotNull
+  private Collection<Shop> ownedShopsView(@NotNull final Object ownerKey) {
+
+    final Map<Location, Shop> owned = shopsByOwner.get(ownerKey);
+    if(owned == null) {
+      return Collections.emptyList();
     }
-    return playerShops;
+    return Collections.unmodifiableCollection(owned.values());
   }
 
 
@@ -344,12 +589,7 @@ public abstract class AbstractShopManager implements ShopManager {
   @Override
   public @Nullable Shop getShop(final long shopId) {
 
-    for(final Shop shop : getAllShops()) {
-      if(shop.getShopId() == shopId) {
-        return shop;
-      }
-    }
-    return null;
+    return shopsById.get(shopId);
   }
 
   /**
@@ -470,11 +710,13 @@ public abstract class AbstractShopManager implements ShopManager {
     addShopToLookupTable(shop);
     if(!persist) return CompletableFuture.completedFuture(null);
     return plugin.getDatabaseHelper().createData(shop).thenCompose(plugin.getDatabaseHelper()::createShop)
-            .thenAccept(id->{
+            .thenCompose(id->{
               Log.debug("DEBUG: Setting shop id");
               shop.setShopId(id);
               Log.debug("DEBUG: Creating shop map");
-              plugin.getDatabaseHelper().createShopMap(id, shop.getLocation()).join();
+              return plugin.getDatabaseHelper().createShopMap(id, shop.getLocation());
+            })
+            .thenAccept(v->{
               Log.debug("DEBUG: Creating shop successfully");
               shop.setDirty();
               new ShopCreateSuccessEvent(shop, shop.getOwner()).callEvent();
@@ -549,27 +791,87 @@ public abstract class AbstractShopManager implements ShopManager {
   @Override
   public @NotNull List<Shop> getShopsInWorld(@NotNull final World world) {
 
+    return getShopsInWorld(world.getName());
+  }
+
+  @Override
+  public @NotNull List<Shop> getShopsInWorld(@NotNull final String worldName) {
+
     final List<Shop> worldShops = new ArrayList<>();
-    for(final Shop shop : getAllShops()) {
-      final Location location = shop.getLocation();
-      if(location.isWorldLoaded() && Objects.equals(location.getWorld(), world)) {
-        worldShops.add(shop);
+    final Map<ShopChunk, Map<Location, Shop>> inWorld = getShops(worldName);
+    if(inWorld == null) {
+      return worldShops;
+    }
+    for(final Map<Location, Shop> inChunk : inWorld.values()) {
+      for(final Shop shop : inChunk.values()) {
+        if(shop.getLocation().isWorldLoaded()) {
+          worldShops.add(shop);
+        }
       }
     }
     return worldShops;
   }
 
   @Override
-  public @NotNull List<Shop> getShopsInWorld(@NotNull final String worldName) {
+  public @NotNull List<Shop> queryRegion(@NotNull final String worldName, @NotNull final BoundingBox region) {
 
-    final List<Shop> worldShops = new ArrayList<>();
-    for(final Shop shop : getAllShops()) {
-      final Location location = shop.getLocation();
-      if(location.isWorldLoaded() && StringUtils.equals(worldName, location.getWorld().getName())) {
-        worldShops.add(shop);
+    final List<Shop> result = new ArrayList<>();
+    final Map<ShopChunk, Map<Location, Shop>> inWorld = getShops(worldName);
+    if(inWorld == null || inWorld.isEmpty()) {
+      return result;
+    }
+    final int minChunkX = (int)Math.floor(region.getMinX()) >> 4;
+    final int minChunkZ = (int)Math.floor(region.getMinZ()) >> 4;
+    final int maxChunkX = (int)Math.floor(region.getMaxX()) >> 4;
+    final int maxChunkZ = (int)Math.floor(region.getMaxZ()) >> 4;
+    final long chunkCount = ((long)maxChunkX - minChunkX + 1) * ((long)maxChunkZ - minChunkZ + 1);
+    if(chunkCount > inWorld.size()) {
+      // The region is larger than the indexed chunks, scanning the index is cheaper than probing
+      for(final Map.Entry<ShopChunk, Map<Location, Shop>> entry : inWorld.entrySet()) {
+        final ShopChunk chunk = entry.getKey();
+        if(chunk.getX() >= minChunkX && chunk.getX() <= maxChunkX && chunk.getZ() >= minChunkZ && chunk.getZ() <= maxChunkZ) {
+          collectInRegion(entry.getValue(), region, result);
+        }
+      }
+    } else {
+      for(int x = minChunkX; x <= maxChunkX; x++) {
+        for(int z = minChunkZ; z <= maxChunkZ; z++) {
+          final Map<Location, Shop> inChunk = inWorld.get(new SimpleShopChunk(worldName, x, z));
+          if(inChunk != null) {
+            collectInRegion(inChunk, region, result);
+          }
+        }
       }
     }
-    return worldShops;
+    return result;
+  }
+
+  private void collectInRegion(@NotNull final Map<Location, Shop> inChunk, @NotNull final BoundingBox region, @NotNull final List<Shop> result) {
+
+    for(final Map.Entry<Location, Shop> entry : inChunk.entrySet()) {
+      final Location location = entry.getKey();
+      if(region.contains(location.getX(), location.getY(), location.getZ())) {
+        result.add(entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  public @NotNull List<Shop> queryChunks(@NotNull final Collection<? extends ShopChunk> chunks) {
+
+    final List<Shop> result = new ArrayList<>();
+    final Set<ShopChunk> visited = new HashSet<>();
+    for(final ShopChunk chunk : chunks) {
+      final ShopChunk key = new SimpleShopChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+      if(!visited.add(key)) {
+        continue;
+      }
+      final Map<Location, Shop> inChunk = getShops(key);
+      if(inChunk != null) {
+        result.addAll(inChunk.values());
+      }
+    }
+    return result;
   }
 
 
@@ -581,6 +883,136 @@ public abstract class AbstractShopManager implements ShopManager {
     return plugin.getDatabaseHelper().queryInventoryCache(shop.getShopId());
   }
 
+  @Override
+  public void recordInventoryCount(@NotNull final Shop shop, final boolean stock, final int count) {
+
+    final long shopId = shop.getShopId();
+    if(shopId < 1) {
+      // The shops that not saved yet all have id -1, don't let them share one snapshot
+      return;
+    }
+    if(stock) {
+      inventorySnapshots.recordStock(shopId, count);
+    } else {
+      inventorySnapshots.recordSpace(shopId, count);
+    }
+  }
+
+  @Override
+  public int getInventoryCountSnapshot(@NotNull final Shop shop, final boolean stock) {
+
+    final long shopId = shop.getShopId();
+    if(shopId < 1) {
+      final ShopInventoryCountCache cache = queryShopInventoryCacheInDatabase(shop).join();
+      return stock? cache.getStock() : cache.getSpace();
+    }
+    final int counted = stock? inventorySnapshots.getStock(shopId) : inventorySnapshots.getSpace(shopId);
+    if(counted != ShopInventorySnapshotTable.UNKNOWN) {
+      return counted;
+    }
+    final ShopInventoryCountCache cache = queryShopInventoryCacheInDatabase(shop).join();
+    final int count = stock? cache.getStock() : cache.getSpace();
+    // Only fill the asked side if it still unknown, it may be counted while we're waiting for the database
+    final ShopInventorySnapshotTable.Snapshot snapshot = stock? inventorySnapshots.recordIfUnknown(shopId, count, ShopInventorySnapshotTable.UNKNOWN)
+                                                              : inventorySnapshots.recordIfUnknown(shopId, ShopInventorySnapshotTable.UNKNOWN, count);
+    if(snapshot == null) {
+      return count;
+    }
+    return stock? snapshot.getStock() : snapshot.getSpace();
+  }
+
+
+  /**
+   * Weakly consistent spliterator that walks the world - chunk - location map in place, splitting
+   * on worlds first and then on chunks of the remaining world.
+   */
+  static class ShopSpliterator implements Spliterator<Shop> {
+
+    @Nullable
+    private Spliterator<Map<ShopChunk, Map<Location, Shop>>> worlds;
+    @Nullable
+    private Spliterator<Map<Location, Shop>> chunks;
+    @Nullable
+    private Spliterator<Shop> current;
+
+    ShopSpliterator(@Nullable final Spliterator<Map<ShopChunk, Map<Location, Shop>>> worlds, @Nullable final Spliterator<Map<Location, Shop>> chunks) {
+
+      this.worlds = worlds;
+      this.chunks = chunks;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Shop> action) {
+
+      while(true) {
+        if(current != null && current.tryAdvance(action)) {
+          return true;
+        }
+        current = null;
+        if(chunks != null && chunks.tryAdvance(inChunk->current = inChunk.values().spliterator())) {
+          continue;
+        }
+        chunks = null;
+        if(worlds != null && worlds.tryAdvance(inWorld->chunks = inWorld.values().spliterator())) {
+          continue;
+        }
+        worlds = null;
+        return false;
+      }
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super Shop> action) {
+
+      if(current != null) {
+        current.forEachRemaining(action);
+        current = null;
+      }
+      if(chunks != null) {
+        chunks.forEachRemaining(inChunk->inChunk.values().forEach(action));
+        chunks = null;
+      }
+      if(worlds != null) {
+        worlds.forEachRemaining(inWorld->inWorld.values().forEach(inChunk->inChunk.values().forEach(action)));
+        worlds = null;
+      }
+    }
+
+    @Override
+    @Nullable
+    public Spliterator<Shop> trySplit() {
+
+      if(worlds != null) {
+        final Spliterator<Map<ShopChunk, Map<Location, Shop>>> split = worlds.trySplit();
+        if(split != null) {
+          return new ShopSpliterator(split, null);
+        }
+        if(chunks == null && current == null) {
+          // Only one world left (e.g. the servers that have one world), split its chunks instead
+          worlds.tryAdvance(inWorld->chunks = inWorld.values().spliterator());
+        }
+      }
+      if(chunks != null) {
+        final Spliterator<Map<Location, Shop>> split = chunks.trySplit();
+        if(split != null) {
+          return new ShopSpliterator(null, split);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+
+      return Spliterator.CONCURRENT | Spliterator.NONNULL;
+    }
+  }
 
   static class TagParser {
 
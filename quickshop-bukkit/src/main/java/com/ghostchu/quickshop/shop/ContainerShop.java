@@ -20,6 +20,7 @@ import com.ghostchu.quickshop.api.event.ShopUnloadEvent;
 import com.ghostchu.quickshop.api.event.ShopUpdateEvent;
 import com.ghostchu.quickshop.api.inventory.InventoryWrapper;
 import com.ghostchu.quickshop.api.inventory.InventoryWrapperManager;
+import com.ghostchu.quickshop.api.inventory.InventoryWrapperType;
 import com.ghostchu.quickshop.api.localization.text.ProxiedLocale;
 import com.ghostchu.quickshop.api.obj.QUser;
 import com.ghostchu.quickshop.api.serialize.BlockPos;
@@ -35,11 +36,15 @@ import com.ghostchu.quickshop.database.bean.SimpleDataRecord;
 import com.ghostchu.quickshop.obj.QUserImpl;
 import com.ghostchu.quickshop.shop.datatype.ShopSignPersistentDataType;
 import com.ghostchu.quickshop.shop.display.AbstractDisplayItem;
+import com.ghostchu.quickshop.shop.inventory.BukkitListenerDrivenInventoryListener;
+import com.ghostchu.quickshop.shop.inventory.InventoryWrapperUpdateManager;
 import com.ghostchu.quickshop.util.MsgUtil;
 import com.ghostchu.quickshop.util.PackageUtil;
 import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.logger.Log;
 import com.ghostchu.quickshop.util.logging.container.ShopRemoveLog;
+import com.ghostchu.quickshop.util.matcher.item.ItemPredicate;
+import com.ghostchu.quickshop.util.matcher.item.QuickShopItemMatcherImpl;
 import com.ghostchu.quickshop.util.performance.PerfMonitor;
 import com.ghostchu.simplereloadlib.ReloadResult;
 import com.ghostchu.simplereloadlib.Reloadable;
@@ -80,13 +85,15 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ChestShop core
  */
 @EqualsAndHashCode
-public class ContainerShop implements Shop, Reloadable {
+public class ContainerShop implements Shop, Reloadable, BukkitListenerDrivenInventoryListener {
 
+  private static final int INVENTORY_COUNT_UNKNOWN = Integer.MIN_VALUE;
   // We use deprecated method to create a fake quickshop-reremake namespace to trick bukkit to access legacy data.
   private static final NamespacedKey LEGACY_SHOP_NAMESPACED_KEY = new NamespacedKey("quickshop", "shopsign");
   private static final String LEGACY_SHOP_SIGN_RECOGNIZE_PATTERN = "§d§o ";
@@ -122,7 +129,20 @@ public class ContainerShop implements Shop, Reloadable {
   @EqualsAndHashCode.Exclude
   private boolean dirty;
   @EqualsAndHashCode.Exclude
+  private final AtomicBoolean dirtyQueued = new AtomicBoolean(false);
+  @EqualsAndHashCode.Exclude
   private boolean updating = false;
+  @EqualsAndHashCode.Exclude
+  @Nullable
+  private volatile ItemPredicate itemPredicate;
+  @EqualsAndHashCode.Exclude
+  private volatile int cachedStock = INVENTORY_COUNT_UNKNOWN;
+  @EqualsAndHashCode.Exclude
+  private volatile long cachedStockTime;
+  @EqualsAndHashCode.Exclude
+  private volatile int cachedSpace = INVENTORY_COUNT_UNKNOWN;
+  @EqualsAndHashCode.Exclude
+  private volatile long cachedSpaceTime;
   @Nullable
   private String currency;
   private boolean disableDisplay;
@@ -208,7 +228,8 @@ public class ContainerShop implements Shop, Reloadable {
     // Upgrade the shop moderator
     this.owner = owner;
     this.item = item.clone();
-    this.originalItem = item.clone();
+    // The given item may be a shared prototype, don't modify it
+    final ItemStack original = item.clone();
     this.plugin = plugin;
     this.playerGroup = new HashMap<>(playerGroup);
     if(!plugin.isAllowStack()) {
@@ -220,10 +241,12 @@ public class ContainerShop implements Shop, Reloadable {
         //https://hub.spigotmc.org/jira/browse/SPIGOT-5964
         meta.setDisplayName(meta.getDisplayName());
         //Correct both items
-        item.setItemMeta(meta);
+        original.setItemMeta(meta);
         this.item.setItemMeta(meta);
       }
     }
+    // Never modified, share it with the shops selling the same item
+    this.originalItem = Util.getItemStackCache().intern(original);
     this.shopType = type;
     this.unlimited = unlimited;
     this.extra = extra;
@@ -282,6 +305,7 @@ public class ContainerShop implements Shop, Reloadable {
       Objects.requireNonNull(inv).addItem(item);
       remains -= stackSize;
     }
+    invalidateInventoryCount();
     this.setSignText();
   }
 
@@ -331,7 +355,9 @@ public class ContainerShop implements Shop, Reloadable {
               .item(this.getItem())
               .amount(amount)
               .build();
-      if(!transaction.failSafeCommit()) {
+      final boolean committed = transaction.failSafeCommit();
+      invalidateInventoryCount();
+      if(!committed) {
         if(plugin.getSentryErrorReporter() != null) {
           plugin.getSentryErrorReporter().ignoreThrow();
         }
@@ -435,6 +461,7 @@ public class ContainerShop implements Shop, Reloadable {
       return;
     }
     this.currency = currency;
+    plugin.getShopManager().reindexShopPrice(this);
     setDirty();
   }
 
@@ -524,6 +551,9 @@ public class ContainerShop implements Shop, Reloadable {
     }
     this.item = item;
     this.originalItem = item;
+    this.itemPredicate = plugin.getItemMatcher() instanceof final QuickShopItemMatcherImpl quickShopItemMatcher? quickShopItemMatcher.compile(item) : null;
+    plugin.getShopManager().reindexShopItem(this);
+    invalidateInventoryCount();
     if(this.displayItem != null) {
       this.displayItem.remove(false);
     }
@@ -562,7 +592,9 @@ public class ContainerShop implements Shop, Reloadable {
     if(this.owner.equals(owner)) {
       return;
     }
+    final QUser previousOwner = this.owner;
     this.owner = owner;
+    plugin.getShopManager().reindexShopOwner(this, previousOwner);
     setDirty();
     setSignText(plugin.getTextManager().findRelativeLanguages(owner, false));
   }
@@ -622,6 +654,7 @@ public class ContainerShop implements Shop, Reloadable {
 
     Util.ensureThread(false);
     this.price = price;
+    plugin.getShopManager().reindexShopPrice(this);
     setDirty();
     setSignText();
   }
@@ -638,17 +671,26 @@ public class ContainerShop implements Shop, Reloadable {
       return -1;
     }
     if(Bukkit.isPrimaryThread()) {
-      if(this.getInventory() == null) {
+      final int cached = this.cachedSpace;
+      if(cached != INVENTORY_COUNT_UNKNOWN && isInventoryCountFresh(cachedSpaceTime)) {
+        return cached;
+      }
+      final InventoryWrapper inventory = this.getInventory();
+      if(inventory == null) {
         Log.debug("Failed to calc RemainingSpace for shop " + this + ": Inventory null.");
         return 0;
       }
-      final int space = Util.countSpace(this.getInventory(), this);
+      final int space = Util.countSpace(inventory, this);
+      if(isInventoryCountCacheable(inventory)) {
+        this.cachedSpaceTime = System.currentTimeMillis();
+        this.cachedSpace = space;
+      }
+      plugin.getShopManager().recordInventoryCount(this, false, space);
       new ShopInventoryCalculateEvent(this, space, -1).callEvent();
       Log.debug("Space count is: " + space);
       return space;
     } else {
-
-      return plugin.getShopManager().queryShopInventoryCacheInDatabase(this).join().getSpace();
+      return plugin.getShopManager().getInventoryCountSnapshot(this, false);
     }
   }
 
@@ -664,18 +706,64 @@ public class ContainerShop implements Shop, Reloadable {
       return -1;
     }
     if(Bukkit.isPrimaryThread()) {
-      if(this.getInventory() == null) {
+      final int cached = this.cachedStock;
+      if(cached != INVENTORY_COUNT_UNKNOWN && isInventoryCountFresh(cachedStockTime)) {
+        return cached;
+      }
+      final InventoryWrapper inventory = this.getInventory();
+      if(inventory == null) {
         Log.debug("Failed to calc RemainingStock for shop " + this + ": Inventory null.");
         return 0;
       }
-      final int stock = Util.countItems(this.getInventory(), this);
+      final int stock = Util.countItems(inventory, this);
+      if(isInventoryCountCacheable(inventory)) {
+        this.cachedStockTime = System.currentTimeMillis();
+        this.cachedStock = stock;
+      }
+      plugin.getShopManager().recordInventoryCount(this, true, stock);
       new ShopInventoryCalculateEvent(this, -1, stock).callEvent();
       return stock;
     } else {
-      return plugin.getShopManager().queryShopInventoryCacheInDatabase(this).join().getStock();
+      return plugin.getShopManager().getInventoryCountSnapshot(this, true);
     }
   }
 
+  /**
+   * Drops the cached stock and space, the next query will recount the inventory.
+   */
+  public void invalidateInventoryCount() {
+
+    this.cachedStock = INVENTORY_COUNT_UNKNOWN;
+    this.cachedSpace = INVENTORY_COUNT_UNKNOWN;
+  }
+
+  @Override
+  public boolean notify(@NotNull final Location updated) {
+
+    if(cachedStock == INVENTORY_COUNT_UNKNOWN && cachedSpace == INVENTORY_COUNT_UNKNOWN) {
+      return false;
+    }
+    invalidateInventoryCount();
+    return true;
+  }
+
+  private boolean isInventoryCountCacheable(@NotNull final InventoryWrapper inventory) {
+
+    final InventoryWrapperUpdateManager updateManager = plugin.getInvWrapperUpdateManager();
+    // Only Bukkit inventories fire the events we're listening
+    return updateManager != null && updateManager.isEnabled() && inventory.getInventoryType() == InventoryWrapperType.BUKKIT;
+  }
+
+  private boolean isInventoryCountFresh(final long countedAt) {
+
+    final InventoryWrapperUpdateManager updateManager = plugin.getInvWrapperUpdateManager();
+    if(updateManager == null || !updateManager.isEnabled()) {
+      return false;
+    }
+    final long maxAge = updateManager.getMaxAgeMillis();
+    return maxAge <= 0 || System.currentTimeMillis() - countedAt < maxAge;
+  }
+
   /**
    * WARNING: This UUID will changed after plugin reload, shop reload or server restart DO NOT USE
    * IT TO STORE DATA!
@@ -701,6 +789,7 @@ public class ContainerShop implements Shop, Reloadable {
       throw new IllegalStateException("Cannot set shop id once it fully created.");
     }
     this.shopId = newId;
+    plugin.getShopManager().indexShopId(this);
     setDirty();
   }
 
@@ -768,6 +857,7 @@ public class ContainerShop implements Shop, Reloadable {
       return;
     }
     this.shopType = newShopType;
+    plugin.getShopManager().reindexShopPrice(this);
     this.setSignText();
     setDirty();
   }
@@ -968,6 +1058,69 @@ public class ContainerShop implements Shop, Reloadable {
   public void setDirty(final boolean isDirty) {
 
     this.dirty = isDirty;
+    if(isDirty) {
+      enqueueDirty();
+    }
+  }
+
+  private void enqueueDirty() {
+
+    if(dirtyQueued.compareAndSet(false, true)) {
+      plugin.getShopManager().markShopDirty(this);
+    }
+  }
+
+  /**
+   * Called after the shop polled from the dirty queue, so next changes can queue it again.
+   */
+  void dequeueDirty() {
+
+    dirtyQueued.set(false);
+  }
+
+  /**
+   * Queues this shop again if it still dirty, for the shops that polled from the dirty queue but not
+   * saved.
+   */
+  void requeueIfDirty() {
+
+    if(this.dirty) {
+      enqueueDirty();
+    }
+  }
+
+  /**
+   * Prepares this shop for a batched database update.
+   *
+   * @return false if this shop should not be saved now
+   */
+  boolean beginBatchUpdate() {
+
+    if(updating || this.shopId == -1) {
+      return false;
+    }
+    if(Util.fireCancellableEvent(new ShopUpdateEvent(this))) {
+      Log.debug("The Shop update action was canceled by a plugin.");
+      return false;
+    }
+    updating = true;
+    // Clear before snapshot, any changes after this will mark it dirty again
+    this.dirty = false;
+    return true;
+  }
+
+  /**
+   * Finishes a batched database update started by {@link #beginBatchUpdate()}.
+   *
+   * @param throwable The error if the update failed
+   */
+  void finishBatchUpdate(@Nullable final Throwable throwable) {
+
+    updating = false;
+    if(throwable != null) {
+      plugin.logger().warn("Could not update a shop in the database! Changes will revert after a reboot!", throwable);
+      setDirty();
+    }
   }
 
   @Override
@@ -1101,6 +1254,18 @@ public class ContainerShop implements Shop, Reloadable {
     return Util.canBeShop(this.getLocation().getBlock());
   }
 
+  // Compiled lazily, and compiled again once the matcher settings changed
+  @NotNull
+  private ItemPredicate getItemPredicate(@NotNull final QuickShopItemMatcherImpl matcher) {
+
+    ItemPredicate predicate = this.itemPredicate;
+    if(predicate == null || predicate.isStale()) {
+      predicate = matcher.compile(this.item);
+      this.itemPredicate = predicate;
+    }
+    return predicate;
+  }
+
   /**
    * Returns true if the ItemStack matches what this shop is selling/buying
    *
@@ -1114,6 +1279,9 @@ public class ContainerShop implements Shop, Reloadable {
     if(item == null) {
       return false;
     }
+    if(plugin.getItemMatcher() instanceof final QuickShopItemMatcherImpl quickShopItemMatcher) {
+      return getItemPredicate(quickShopItemMatcher).test(item);
+    }
     final ItemStack givenItem = item.clone();
     givenItem.setAmount(1);
     final ItemStack shopItem = this.item.clone();
@@ -1353,6 +1521,7 @@ public class ContainerShop implements Shop, Reloadable {
       Objects.requireNonNull(inv).removeItem(item);
       remains -= stackSize;
     }
+    invalidateInventoryCount();
     this.setSignText();
   }
 
@@ -1427,7 +1596,9 @@ public class ContainerShop implements Shop, Reloadable {
               .item(this.getItem())
               .amount(amount)
               .build();
-      if(!transactionTake.failSafeCommit()) {
+      final boolean committed = transactionTake.failSafeCommit();
+      invalidateInventoryCount();
+      if(!committed) {
         if(plugin.getSentryErrorReporter() != null) {
           plugin.getSentryErrorReporter().ignoreThrow();
         }
@@ -1441,6 +1612,7 @@ public class ContainerShop implements Shop, Reloadable {
   public void setDirty() {
 
     this.dirty = true;
+    enqueueDirty();
   }
 
   /**
@@ -1485,6 +1657,7 @@ public class ContainerShop implements Shop, Reloadable {
     }
     this.inventoryWrapperProvider = provider;
     this.symbolLink = manager.mklink(wrapper);
+    invalidateInventoryCount();
     setDirty();
     Log.debug("Inventory changed: " + this.symbolLink + ", wrapper provider:" + inventoryWrapperProvider);
     new ShopInventoryChangedEvent(wrapper, manager).callEvent();
@@ -1606,6 +1779,7 @@ public class ContainerShop implements Shop, Reloadable {
               } else {
                 plugin.logger().warn(
                         "Could not update a shop in the database! Changes will revert after a reboot!", throwable);
+                enqueueDirty();
               }
             });
   }
@@ -0,0 +1,250 @@
+package com.ghostchu.quickshop.shop;
+
+import com.ghostchu.quickshop.api.shop.Shop;
+import com.ghostchu.quickshop.util.Util;
+import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
+import com.ghostchu.quickshop.util.paste.util.HTMLTable;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * An inverted index of the searchable terms of the shop items (the material, the display name and
+ * the enchants) to the shops, per world. The terms are computed once when the shop indexed, so the
+ * searches only match the keyword against the distinct terms instead of serializing the item of
+ * every shop.
+ */
+public class ShopItemSearchIndex implements SubPasteItem {
+
+  // <World, <Term, <Location, Shop>>>
+  private final Map<String, Map<String, Map<Location, Shop>>> worlds = new ConcurrentHashMap<>();
+  private final Map<Location, String[]> termsByLocation = new ConcurrentHashMap<>();
+  private final LongAdder searches = new LongAdder();
+  private final LongAdder totalSearchNanos = new LongAdder();
+
+  /**
+   * Gets the searchable terms of the item, same as what /qs find used to match.
+   *
+   * @param item The item
+   *
+   * @return The terms
+   */
+  @NotNull
+  private static String[] terms(@NotNull final ItemStack item) {
+
+    final Set<String> terms = new LinkedHashSet<>();
+    terms.add(materialTerm(item.getType()));
+    terms.add(ChatColor.stripColor(LegacyComponentSerializer.legacySection().serialize(Util.getItemStackName(item))).toLowerCase());
+    for(final Component enchant : Util.getEnchantsForItemStack(item)) {
+      terms.add(PlainTextComponentSerializer.plainText().serialize(enchant).toLowerCase().replace(' ', '_'));
+    }
+    return terms.toArray(new String[0]);
+  }
+
+  @NotNull
+  private static String materialTerm(@NotNull final Material material) {
+
+    return material.name().toLowerCase();
+  }
+
+  /**
+   * Indexes the shop, or re-indexes it if it already indexed (e.g. the item changed).
+   *
+   * @param shop The shop
+   */
+  public void add(@NotNull final Shop shop) {
+
+    final Location location = shop.getLocation();
+    final World world = location.getWorld();
+    if(world == null) {
+      return;
+    }
+    final String[] terms = terms(shop.getItem());
+    final Map<String, Map<Location, Shop>> postings = worlds.computeIfAbsent(world.getName(), name->new ConcurrentHashMap<>());
+    synchronized(postings) {
+      final String[] previous = termsByLocation.put(location, terms);
+      if(previous != null) {
+        unlink(postings, previous, location);
+      }
+      for(final String term : terms) {
+        postings.computeIfAbsent(term, k->new ConcurrentHashMap<>()).put(location, shop);
+      }
+    }
+  }
+
+  /**
+   * Removes the shop from the index.
+   *
+   * @param shop The shop
+   */
+  public void remove(@NotNull final Shop shop) {
+
+    final Location location = shop.getLocation();
+    final World world = location.getWorld();
+    if(world == null) {
+      return;
+    }
+    final Map<String, Map<Location, Shop>> postings = worlds.get(world.getName());
+    if(postings == null) {
+      return;
+    }
+    synchronized(postings) {
+      final String[] terms = termsByLocation.get(location);
+      if(terms == null) {
+        return;
+      }
+      final Map<Location, Shop> anyPosting = postings.get(terms[0]);
+      if(anyPosting == null || anyPosting.get(location) != shop) {
+        // Another shop took this location
+        return;
+      }
+      termsByLocation.remove(location);
+      unlink(postings, terms, location);
+    }
+  }
+
+  private void unlink(@NotNull final Map<String, Map<Location, Shop>> postings, @NotNull final String[] terms, @NotNull final Location location) {
+
+    for(final String term : terms) {
+      postings.computeIfPresent(term, (k, shops)->{
+        shops.remove(location);
+        return shops.isEmpty()? null : shops;
+      });
+    }
+  }
+
+  public void clear() {
+
+    worlds.clear();
+    termsByLocation.clear();
+  }
+
+  /**
+   * Finds the shops in the world that item has any term contains the keyword.
+   *
+   * @param worldName The world name
+   * @param keyword   The lower-cased keyword
+   *
+   * @return The shops
+   */
+  @NotNull
+  public Collection<Shop> search(@NotNull final String worldName, @NotNull final String keyword) {
+
+    final long startAt = System.nanoTime();
+    final Map<String, Map<Location, Shop>> postings = worlds.get(worldName);
+    if(postings == null) {
+      return Collections.emptyList();
+    }
+    final Map<Location, Shop> found = new HashMap<>();
+    for(final Map.Entry<String, Map<Location, Shop>> entry : postings.entrySet()) {
+      if(entry.getKey().contains(keyword)) {
+        found.putAll(entry.getValue());
+      }
+    }
+    searches.increment();
+    totalSearchNanos.add(System.nanoTime() - startAt);
+    return found.values();
+  }
+
+  /**
+   * Gets the shops in the world that selling or buying the given material.
+   *
+   * @param worldName The world name
+   * @param material  The material
+   *
+   * @return The shops
+   */
+  @NotNull
+  public Collection<Shop> searchMaterial(@NotNull final String worldName, @NotNull final Material material) {
+
+    final Map<String, Map<Location, Shop>> postings = worlds.get(worldName);
+    if(postings == null) {
+      return Collections.emptyList();
+    }
+    final Map<Location, Shop> shops = postings.get(materialTerm(material));
+    // The display name of other items may be same as the material name
+    return shops == null? Collections.emptyList() : shops.values().stream().filter(shop->shop.getItem().getType() == material).toList();
+  }
+
+  /**
+   * Gets the nearest shops to the center that accepted by the filter, the filter only tests the
+   * shops in range from nearest to farthest until enough shops found.
+   *
+   * @param shops       The shops
+   * @param center      The center
+   * @param maxDistance The max distance
+   * @param limit       The max amount of shops
+   * @param filter      The filter
+   *
+   * @return The shops with distance, sorted from nearest to farthest
+   */
+  @NotNull
+  public static List<ShopDistance> nearest(@NotNull final Collection<Shop> shops, @NotNull final Location center, final double maxDistance, final int limit, @NotNull final Predicate<Shop> filter) {
+
+    final double maxDistanceSquared = maxDistance * maxDistance;
+    final List<ShopDistance> inRange = new ArrayList<>();
+    for(final Shop shop : shops) {
+      final Location location = shop.getLocation();
+      final double dx = location.getX() - center.getX();
+      final double dy = location.getY() - center.getY();
+      final double dz = location.getZ() - center.getZ();
+      final double distanceSquared = dx * dx + dy * dy + dz * dz;
+      if(distanceSquared <= maxDistanceSquared) {
+        inRange.add(new ShopDistance(shop, Math.sqrt(distanceSquared)));
+      }
+    }
+    inRange.sort(Comparator.comparingDouble(ShopDistance::distance));
+    final List<ShopDistance> result = new ArrayList<>(Math.min(limit, inRange.size()));
+    for(final ShopDistance shopDistance : inRange) {
+      if(result.size() >= limit) {
+        break;
+      }
+      if(filter.test(shopDistance.shop())) {
+        result.add(shopDistance);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public @NotNull String genBody() {
+
+    final HTMLTable table = new HTMLTable(2, true);
+    table.insert("Indexed Shops", String.valueOf(termsByLocation.size()));
+    table.insert("Distinct Terms", String.valueOf(worlds.values().stream().mapToInt(Map::size).sum()));
+    table.insert("Searches", String.valueOf(searches.sum()));
+    final long count = searches.sum();
+    table.insert("Average Search Time", String.format("%.3f", count == 0? 0 : TimeUnit.NANOSECONDS.toMicros(totalSearchNanos.sum()) / (double)count / 1000) + "ms");
+    return table.render();
+  }
+
+  @Override
+  public @NotNull String getTitle() {
+
+    return "Shop Item Search Index";
+  }
+
+  public record ShopDistance(@NotNull Shop shop, double distance) {
+
+  }
+}
@@ -16,6 +16,7 @@ import com.ghostchu.quickshop.util.PackageUtil;
 import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.logger.Log;
 import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
+import com.ghostchu.quickshop.util.performance.BatchBukkitExecutor;
 import com.google.common.reflect.TypeToken;
 import lombok.Getter;
 import lombok.Setter;
@@ -32,15 +33,21 @@ import org.slf4j.Logger;
 
 import java.lang.reflect.Type;
 import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class allow plugin load shops fast and simply.
@@ -49,8 +56,13 @@ public class ShopLoader implements SubPasteItem {
 
   private final QuickShop plugin;
   private final ExecutorService executorService;
+  private final int parallelism;
+  private final int batchSize;
+  private final int tickBudgetMs;
   /* This may contains broken shop, must use null check before load it. */
-  private int errors;
+  private final AtomicInteger errors = new AtomicInteger(0);
+  @Nullable
+  private volatile LoadStatistics lastStatistics;
 
   /**
    * The shop load allow plugin load shops fast and simply.
@@ -60,9 +72,11 @@ public class ShopLoader implements SubPasteItem {
   public ShopLoader(@NotNull final QuickShop plugin) {
 
     this.plugin = plugin;
-    this.executorService = Executors.newWorkStealingPool(PackageUtil
-                                                                 .parsePackageProperly("parallelism")
-                                                                 .asInteger(CommonUtil.multiProcessorThreadRecommended()));
+    this.parallelism = Math.max(1, PackageUtil.parsePackageProperly("parallelism").asInteger(CommonUtil.multiProcessorThreadRecommended()));
+    this.batchSize = Math.max(1, PackageUtil.parsePackageProperly("loadBatchSize").asInteger(256));
+    this.tickBudgetMs = Math.max(1, PackageUtil.parsePackageProperly("loadTickBudget").asInteger(15));
+    this.executorService = Executors.newWorkStealingPool(parallelism);
+    plugin.getPasteManager().register(plugin.getJavaPlugin(), this);
   }
 
   public void loadShops() {
@@ -72,6 +86,10 @@ public class ShopLoader implements SubPasteItem {
 
   /**
    * Load all shops in the specified world
+   * <p>
+   * The rows are streamed from database and handed to the worker pool in bounded batches, the
+   * workers deserialize and register the shops while the database still reading. The shops in
+   * loaded chunks are loaded into the world on the main thread under a tick budget.
    *
    * @param worldName The world name, null if load all shops
    */
@@ -86,61 +104,69 @@ public class ShopLoader implements SubPasteItem {
         return;
       }
     }
+    // The worlds this server loads, the servers that sharing one database only read the rows of their own worlds
+    final List<String> whitelistWorlds = plugin.getConfig().getStringList("database-loading-whitelist-worlds");
+    if(worldName != null && !whitelistWorlds.isEmpty() && !whitelistWorlds.contains(worldName)) {
+      return;
+    }
     final boolean deleteCorruptShops = plugin.getConfig().getBoolean("debug.delete-corrupt-shops", false);
     plugin.logger().info("Loading shops from database...");
+    final LoadPipeline pipeline = new LoadPipeline(worldName, deleteCorruptShops);
     final Timer dbFetchTimer = new Timer(true);
-    final List<ShopRecord> records = plugin.getDatabaseHelper().listShops(worldName, deleteCorruptShops);
-    plugin.logger().info("Used {}ms to fetch {} shops from database.", dbFetchTimer.stopAndGetTimePassed(), records.size());
-    plugin.logger().info("Loading shops into memory...");
-    final Timer shopTotalTimer = new Timer(true);
-    final AtomicInteger successCounter = new AtomicInteger(0);
-    final AtomicInteger chunkNotLoaded = new AtomicInteger(0);
-    final List<Shop> shopsLoadInNextTick = new CopyOnWriteArrayList<>();
-    for(final ShopRecord record : records) {
-      loadShopFromShopRecord(worldName, record, deleteCorruptShops,
-                             shopsLoadInNextTick, successCounter, chunkNotLoaded)
-              .exceptionally(e->{
-                plugin.logger().warn("Failed to load shop {}", record, e);
-                return null;
-              }).join();
+    if(worldName != null) {
+      plugin.getDatabaseHelper().listShops(worldName, deleteCorruptShops, pipeline::accept);
+    } else {
+      plugin.getDatabaseHelper().listShopsInWorlds(whitelistWorlds.isEmpty()? null : whitelistWorlds, deleteCorruptShops, pipeline::accept);
     }
-    Util.mainThreadRun(()->shopsLoadInNextTick.forEach(shop->{
+    pipeline.flush();
+    final LoadStatistics statistics = pipeline.statistics;
+    statistics.fetchMillis = dbFetchTimer.getPassedTime() - TimeUnit.NANOSECONDS.toMillis(statistics.handoffNanos);
+    plugin.logger().info("Used {}ms to fetch {} shops from database.", statistics.fetchMillis, statistics.records);
+    pipeline.await();
+    statistics.buildMillis = dbFetchTimer.stopAndGetTimePassed();
+    plugin.logger().info("Used {}ms to load {} shops into memory ({} shops will be loaded after chunks/world loaded).", statistics.buildMillis, statistics.loaded.get(), statistics.chunkNotLoaded.get());
+    Log.debug("Shop loading stages: deserialize " + TimeUnit.NANOSECONDS.toMillis(statistics.deserializeNanos.get()) + "ms, register "
+              + TimeUnit.NANOSECONDS.toMillis(statistics.registerNanos.get()) + "ms (CPU time), waited workers " + TimeUnit.NANOSECONDS.toMillis(statistics.handoffNanos) + "ms.");
+    this.lastStatistics = statistics;
+    final Timer worldLoadTimer = new Timer(true);
+    final BatchBukkitExecutor<Shop> worldLoadExecutor = new BatchBukkitExecutor<>(tickBudgetMs);
+    worldLoadExecutor.addTasks(pipeline.shopsLoadInNextTick);
+    worldLoadExecutor.startHandle(plugin.getJavaPlugin(), shop->{
       try {
         plugin.getShopManager().loadShop(shop);
       } catch(Throwable e) {
         plugin.logger().error("Failed to load shop {}.", shop.getShopId(), e);
       }
-    }));
-    plugin.logger().info("Used {}ms to load {} shops into memory ({} shops will be loaded after chunks/world loaded).", shopTotalTimer.stopAndGetTimePassed(), successCounter.get(), chunkNotLoaded.get());
+    }).thenRun(()->{
+      statistics.worldLoadMillis = worldLoadTimer.stopAndGetTimePassed();
+      plugin.logger().info("Used {}ms to load {} shops into the worlds.", statistics.worldLoadMillis, pipeline.shopsLoadInNextTick.size());
+    });
   }
 
-  private CompletableFuture<Void> loadShopFromShopRecord(final String worldName, final ShopRecord shopRecord, final boolean deleteCorruptShops, final List<Shop> shopsLoadInNextTick, final AtomicInteger successCounter, final AtomicInteger chunkNotLoaded) {
-
-    return CompletableFuture.supplyAsync(()->{
-      final InfoRecord infoRecord = shopRecord.getInfoRecord();
-      final DataRecord dataRecord = shopRecord.getDataRecord();
-      final Timer singleShopLoadingTimer = new Timer(true);
-      final ShopLoadResult result = loadSingleShop(infoRecord, dataRecord, worldName, shopsLoadInNextTick);
-      switch(result) {
-        case LOADED -> successCounter.incrementAndGet();
-        case LOAD_AFTER_CHUNK_LOADED -> chunkNotLoaded.incrementAndGet();
-        case WORLD_NOT_MATCH_SKIPPED -> {
-          // Do nothing
-        }
-        case FAILED -> {
-          if(deleteCorruptShops) {
-            plugin.getDatabaseHelper().removeShopMap(infoRecord.getWorld(), infoRecord.getX(), infoRecord.getY(), infoRecord.getZ());
-            plugin.logger().warn("Shop {} is corrupted, removed from database.", infoRecord.getShopId());
-          }
+  private void loadShopFromShopRecord(final String worldName, final ShopRecord shopRecord, final boolean deleteCorruptShops, final Queue<Shop> shopsLoadInNextTick, final LoadStatistics statistics) {
+
+    final InfoRecord infoRecord = shopRecord.getInfoRecord();
+    final DataRecord dataRecord = shopRecord.getDataRecord();
+    final Timer singleShopLoadingTimer = new Timer(true);
+    final ShopLoadResult result = loadSingleShop(infoRecord, dataRecord, worldName, shopsLoadInNextTick, statistics);
+    switch(result) {
+      case LOADED -> statistics.loaded.incrementAndGet();
+      case LOAD_AFTER_CHUNK_LOADED -> statistics.chunkNotLoaded.incrementAndGet();
+      case WORLD_NOT_MATCH_SKIPPED -> {
+        // Do nothing
+      }
+      case FAILED -> {
+        if(deleteCorruptShops) {
+          plugin.getDatabaseHelper().removeShopMap(infoRecord.getWorld(), infoRecord.getX(), infoRecord.getY(), infoRecord.getZ());
+          plugin.logger().warn("Shop {} is corrupted, removed from database.", infoRecord.getShopId());
         }
       }
-      Log.timing("Shop loading completed: " + result.name(), singleShopLoadingTimer);
-      return null;
-    }, this.executorService);
+    }
+    Log.timing("Shop loading completed: " + result.name(), singleShopLoadingTimer);
   }
 
 
-  private ShopLoadResult loadSingleShop(final InfoRecord infoRecord, final DataRecord dataRecord, @Nullable final String worldName, @NotNull final List<Shop> shopsLoadInNextTick) {
+  private ShopLoadResult loadSingleShop(final InfoRecord infoRecord, final DataRecord dataRecord, @Nullable final String worldName, @NotNull final Queue<Shop> shopsLoadInNextTick, @NotNull final LoadStatistics statistics) {
     // World check
     if(worldName != null) {
       if(!worldName.equals(infoRecord.getWorld())) {
@@ -168,6 +194,7 @@ public class ShopLoader implements SubPasteItem {
     final int y = infoRecord.getY();
     final int z = infoRecord.getZ();
     final Shop shop;
+    final long deserializeStartAt = System.nanoTime();
     final DataRawDatabaseInfo rawInfo = new DataRawDatabaseInfo(dataRecord);
     final Location location = new Location(Bukkit.getWorld(infoRecord.getWorld()), x, y, z);
     try {
@@ -194,6 +221,8 @@ public class ShopLoader implements SubPasteItem {
       }
       exceptionHandler(e, location);
       return ShopLoadResult.FAILED;
+    } finally {
+      statistics.deserializeNanos.addAndGet(System.nanoTime() - deserializeStartAt);
     }
     // Dirty check
     if(rawInfo.isNeedUpdate()) {
@@ -204,7 +233,9 @@ public class ShopLoader implements SubPasteItem {
       return ShopLoadResult.FAILED;
     }
     // Load to RAM
+    final long registerStartAt = System.nanoTime();
     plugin.getShopManager().registerShop(shop, false); // persist=false to load to memory (it already persisted)
+    statistics.registerNanos.addAndGet(System.nanoTime() - registerStartAt);
     if(Util.isLoaded(location)) {
       // Load to World
       //plugin.getShopManager().loadShop(shop); // Patch the shops won't load around the spawn
@@ -217,7 +248,7 @@ public class ShopLoader implements SubPasteItem {
 
   private void exceptionHandler(@NotNull final Exception ex, @Nullable final Location shopLocation) {
 
-    errors++;
+    final int errors = this.errors.incrementAndGet();
     @NotNull final Logger logger = plugin.logger();
     logger.warn("##########FAILED TO LOAD SHOP##########");
     logger.warn("  >> Error Info:");
@@ -276,7 +307,15 @@ public class ShopLoader implements SubPasteItem {
   @Override
   public @NotNull String genBody() {
 
-    return "<p>Errors: " + errors + "</p>";
+    final StringJoiner joiner = new StringJoiner("<br/>");
+    joiner.add("<p>Errors: " + errors.get() + "</p>");
+    final LoadStatistics statistics = lastStatistics;
+    if(statistics != null) {
+      joiner.add("<p>Last loading: " + statistics.records + " records, " + statistics.loaded.get() + " loaded, " + statistics.chunkNotLoaded.get() + " waiting for chunks</p>");
+      joiner.add("<p>Stages: fetch " + statistics.fetchMillis + "ms, into memory " + statistics.buildMillis + "ms, into worlds " + statistics.worldLoadMillis + "ms</p>");
+      joiner.add("<p>Workers (CPU time): deserialize " + TimeUnit.NANOSECONDS.toMillis(statistics.deserializeNanos.get()) + "ms, register " + TimeUnit.NANOSECONDS.toMillis(statistics.registerNanos.get()) + "ms, parallelism " + parallelism + ", batch size " + batchSize + "</p>");
+    }
+    return joiner.toString();
   }
 
   @Override
@@ -285,6 +324,82 @@ public class ShopLoader implements SubPasteItem {
     return "Shop Loader";
   }
 
+  /**
+   * The timing of each loading stage, the worker stages are the sum of all workers.
+   */
+  private static class LoadStatistics {
+
+    private final AtomicInteger loaded = new AtomicInteger(0);
+    private final AtomicInteger chunkNotLoaded = new AtomicInteger(0);
+    private final AtomicLong deserializeNanos = new AtomicLong(0);
+    private final AtomicLong registerNanos = new AtomicLong(0);
+    private int records;
+    private long handoffNanos;
+    private long fetchMillis;
+    private long buildMillis;
+    private volatile long worldLoadMillis = -1;
+  }
+
+  /**
+   * Collects the streamed records into batches and hands them to the workers, the database reading
+   * thread will be blocked if too many batches are waiting for the workers.
+   */
+  private class LoadPipeline {
+
+    private final String worldName;
+    private final boolean deleteCorruptShops;
+    private final LoadStatistics statistics = new LoadStatistics();
+    private final Queue<Shop> shopsLoadInNextTick = new ConcurrentLinkedQueue<>();
+    private final Semaphore inflightBatches = new Semaphore(parallelism * 2);
+    private final List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
+    private List<ShopRecord> batch = new ArrayList<>(batchSize);
+
+    private LoadPipeline(@Nullable final String worldName, final boolean deleteCorruptShops) {
+
+      this.worldName = worldName;
+      this.deleteCorruptShops = deleteCorruptShops;
+    }
+
+    private void accept(@NotNull final ShopRecord record) {
+
+      statistics.records++;
+      batch.add(record);
+      if(batch.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    private void flush() {
+
+      if(batch.isEmpty()) {
+        return;
+      }
+      final List<ShopRecord> records = batch;
+      batch = new ArrayList<>(batchSize);
+      final long handoffStartAt = System.nanoTime();
+      inflightBatches.acquireUninterruptibly();
+      statistics.handoffNanos += System.nanoTime() - handoffStartAt;
+      batchFutures.add(CompletableFuture.runAsync(()->{
+        try {
+          for(final ShopRecord record : records) {
+            try {
+              loadShopFromShopRecord(worldName, record, deleteCorruptShops, shopsLoadInNextTick, statistics);
+            } catch(Throwable e) {
+              plugin.logger().warn("Failed to load shop {}", record, e);
+            }
+          }
+        } finally {
+          inflightBatches.release();
+        }
+      }, executorService));
+    }
+
+    private void await() {
+
+      CompletableFuture.allOf(batchFutures.toArray(new CompletableFuture[0])).join();
+    }
+  }
+
   public enum ShopLoadResult {
     LOADED,
     LOAD_AFTER_CHUNK_LOADED,
@@ -348,7 +463,8 @@ public class ShopLoader implements SubPasteItem {
     private @Nullable ItemStack deserializeItem(@NotNull final String itemConfig) {
 
       try {
-        return Util.deserialize(itemConfig);
+        // Shared with the shops selling the same item, ContainerShop copies it
+        return Util.deserializeShared(itemConfig);
       } catch(Exception e) {
         QuickShop.getInstance().logger().warn("Failed load shop data, because target config can't deserialize the ItemStack", e);
         Log.debug("Failed to load data to the ItemStack: " + itemConfig);
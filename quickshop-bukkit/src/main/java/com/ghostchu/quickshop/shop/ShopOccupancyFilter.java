@@ -0,0 +1,264 @@
+package com.ghostchu.quickshop.shop;
+
+import com.ghostchu.quickshop.shop.cache.ConcurrentLongTable;
+import com.ghostchu.quickshop.shop.cache.PackedBlockPos;
+import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
+import com.ghostchu.quickshop.util.paste.util.HTMLTable;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A per-chunk bloom filter of the blocks that may resolve to a shop: the shop block itself and its
+ * six neighbours (the other half of double chest, the attached signs and the blocks that attached
+ * to the shop). The blocks that the filter rejected are definitely not shops, so the protection
+ * listeners can skip the lookups that may touch the world.
+ * <p>
+ * The bits of a chunk filter are only set in place when a shop added, so the reads are lock-free and
+ * never miss a marked block. The filter is rebuilt and replaced when a shop removed or it full.
+ */
+public class ShopOccupancyFilter implements SubPasteItem {
+
+  private static final int[][] OFFSETS = {{0, 0, 0}, {1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+  private static final int MIN_BITS = 256;
+  private static final int BITS_PER_POSITION = 16;
+  private final Map<String, ConcurrentLongTable<ChunkFilter>> worlds = new ConcurrentHashMap<>();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder truePositives = new LongAdder();
+  private final LongAdder falsePositives = new LongAdder();
+
+  private static long hash(final long position) {
+
+    long hash = position * 0x9E3779B97F4A7C15L;
+    hash ^= hash >>> 29;
+    return hash;
+  }
+
+  /**
+   * Marks the shop and its neighbours.
+   *
+   * @param shopLocation The shop location
+   */
+  public void add(@NotNull final Location shopLocation) {
+
+    update(shopLocation, true);
+  }
+
+  /**
+   * Unmarks the shop and its neighbours.
+   *
+   * @param shopLocation The shop location
+   */
+  public void remove(@NotNull final Location shopLocation) {
+
+    update(shopLocation, false);
+  }
+
+  public void clear() {
+
+    worlds.clear();
+  }
+
+  private void update(@NotNull final Location shopLocation, final boolean add) {
+
+    final World world = shopLocation.getWorld();
+    if(world == null) {
+      return;
+    }
+    final ConcurrentLongTable<ChunkFilter> chunks = worlds.computeIfAbsent(world.getName(), name->new ConcurrentLongTable<>());
+    synchronized(chunks) {
+      for(final int[] offset : OFFSETS) {
+        final int x = shopLocation.getBlockX() + offset[0];
+        final int y = shopLocation.getBlockY() + offset[1];
+        final int z = shopLocation.getBlockZ() + offset[2];
+        final long chunkKey = PackedBlockPos.chunkKey(x >> 4, z >> 4);
+        final long position = PackedBlockPos.pack(x, y, z);
+        final ChunkFilter filter = chunks.get(chunkKey);
+        if(add) {
+          final ChunkFilter updated = filter == null? ChunkFilter.of(new long[]{position}, 1) : filter.with(position);
+          if(updated != filter) {
+            chunks.put(chunkKey, updated);
+          }
+        } else if(filter != null) {
+          final ChunkFilter updated = filter.without(position);
+          if(updated == null) {
+            chunks.remove(chunkKey);
+          } else {
+            chunks.put(chunkKey, updated);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether the block may be a shop or attached to a shop.
+   *
+   * @param location The block location
+   *
+   * @return false if the block definitely not related to any shop
+   */
+  public boolean mightContain(@NotNull final Location location) {
+
+    final World world = location.getWorld();
+    if(world == null) {
+      return true;
+    }
+    final ConcurrentLongTable<ChunkFilter> chunks = worlds.get(world.getName());
+    if(chunks != null) {
+      final ChunkFilter filter = chunks.get(PackedBlockPos.chunkKey(location));
+      if(filter != null && filter.mightContain(PackedBlockPos.pack(location))) {
+        return true;
+      }
+    }
+    rejected.increment();
+    return false;
+  }
+
+  /**
+   * Records the lookup result of a block that passed the filter, for the false-positive rate.
+   *
+   * @param found Whether the shop found
+   */
+  public void recordLookup(final boolean found) {
+
+    if(found) {
+      truePositives.increment();
+    } else {
+      falsePositives.increment();
+    }
+  }
+
+  /**
+   * Gets the false-positive rate, the non-shop blocks that passed the filter among all the non-shop
+   * blocks.
+   *
+   * @return The false-positive rate
+   */
+  public double getFalsePositiveRate() {
+
+    final long falsePositive = falsePositives.sum();
+    final long negative = falsePositive + rejected.sum();
+    return negative == 0? 0 : (double)falsePositive / negative;
+  }
+
+  @Override
+  public @NotNull String genBody() {
+
+    final HTMLTable table = new HTMLTable(2, true);
+    table.insert("Rejected", String.valueOf(rejected.sum()));
+    table.insert("True Positives", String.valueOf(truePositives.sum()));
+    table.insert("False Positives", String.valueOf(falsePositives.sum()));
+    table.insert("False Positive Rate", String.format("%.2f", getFalsePositiveRate() * 100) + "%");
+    return table.render();
+  }
+
+  @Override
+  public @NotNull String getTitle() {
+
+    return "Shop Occupancy Filter";
+  }
+
+  /**
+   * The bloom filter of one chunk, with the marked positions (may contain duplicates when the
+   * neighbours of shops overlap) to rebuild the bits on remove. The positions and the bits are only
+   * written under the world lock.
+   */
+  private static final class ChunkFilter {
+
+    private final AtomicLongArray bits;
+    private final int mask;
+    private long[] positions;
+    private int size;
+
+    private ChunkFilter(final int capacity) {
+
+      final int bitCount = Math.max(MIN_BITS, Integer.highestOneBit(capacity * BITS_PER_POSITION - 1) << 1);
+      this.bits = new AtomicLongArray(bitCount >>> 6);
+      this.mask = bitCount - 1;
+      this.positions = new long[Math.max(4, capacity)];
+    }
+
+    @NotNull
+    private static ChunkFilter of(final long[] positions, final int size) {
+
+      final ChunkFilter filter = new ChunkFilter(Math.max(1, size));
+      for(int i = 0; i < size; i++) {
+        filter.append(positions[i]);
+      }
+      return filter;
+    }
+
+    private boolean mightContain(final long position) {
+
+      final long hash = hash(position);
+      final int first = (int)hash & mask;
+      final int second = (int)(hash >>> 32) & mask;
+      return (bits.get(first >>> 6) & (1L << first)) != 0 && (bits.get(second >>> 6) & (1L << second)) != 0;
+    }
+
+    private void append(final long position) {
+
+      if(size == positions.length) {
+        positions = Arrays.copyOf(positions, size << 1);
+      }
+      positions[size++] = position;
+      final long hash = hash(position);
+      setBit((int)hash & mask);
+      setBit((int)(hash >>> 32) & mask);
+    }
+
+    private void setBit(final int bit) {
+
+      final int index = bit >>> 6;
+      bits.set(index, bits.get(index) | (1L << bit));
+    }
+
+    /**
+     * Marks the position, in place if there still enough bits.
+     *
+     * @param position The position
+     *
+     * @return this, or the bigger filter that replaces this
+     */
+    @NotNull
+    private ChunkFilter with(final long position) {
+
+      if((size + 1) * BITS_PER_POSITION > (bits.length() << 6)) {
+        // Doubled, so the rebuilds are amortized
+        final ChunkFilter bigger = new ChunkFilter((size + 1) << 1);
+        for(int i = 0; i < size; i++) {
+          bigger.append(positions[i]);
+        }
+        bigger.append(position);
+        return bigger;
+      }
+      append(position);
+      return this;
+    }
+
+    @Nullable
+    private ChunkFilter without(final long position) {
+
+      for(int i = 0; i < size; i++) {
+        if(positions[i] == position) {
+          if(size == 1) {
+            return null;
+          }
+          final long[] updated = new long[size - 1];
+          System.arraycopy(positions, 0, updated, 0, i);
+          System.arraycopy(positions, i + 1, updated, i, size - i - 1);
+          return of(updated, updated.length);
+        }
+      }
+      return this;
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package com.ghostchu.quickshop.shop;
+
+import com.ghostchu.quickshop.QuickShop;
+import com.ghostchu.quickshop.api.shop.PriceStatistics;
+import com.ghostchu.quickshop.api.shop.Shop;
+import com.ghostchu.quickshop.api.shop.ShopType;
+import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
+import com.ghostchu.quickshop.util.paste.util.HTMLTable;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The price statistics of the shops, grouped by the item, shop type and currency, and updated when
+ * the shops created, deleted or changed. So the price suggestions only need to merge the price
+ * histograms of the items that matched, instead of matching the item of every shop and sorting the
+ * prices.
+ * <p>
+ * The items are grouped by material first, only the distinct items in the same group will be tested
+ * by the item matcher.
+ */
+public class ShopPriceStatistics implements SubPasteItem {
+
+  private final QuickShop plugin;
+  // <Material+Type+Currency, <Item (amount 1), Prices>>
+  private final Map<GroupKey, Map<ItemStack, PriceHistogram>> groups = new HashMap<>();
+  private final Map<Location, Entry> entries = new HashMap<>();
+  private final LongAdder queries = new LongAdder();
+
+  public ShopPriceStatistics(@NotNull final QuickShop plugin) {
+
+    this.plugin = plugin;
+  }
+
+  @NotNull
+  private static ItemStack prototypeOf(@NotNull final ItemStack item) {
+
+    final ItemStack prototype = item.clone();
+    prototype.setAmount(1);
+    return prototype;
+  }
+
+  /**
+   * Adds the price of the shop, or updates it if the shop already added (e.g. the price, item, type
+   * or currency changed).
+   *
+   * @param shop The shop
+   */
+  public synchronized void add(@NotNull final Shop shop) {
+
+    final Location location = shop.getLocation();
+    final Entry previous = entries.remove(location);
+    if(previous != null) {
+      unlink(previous);
+    }
+    final ItemStack prototype = prototypeOf(shop.getItem());
+    final Entry entry = new Entry(shop, new GroupKey(prototype.getType(), shop.getShopType(), shop.getCurrency()), prototype, shop.getPrice());
+    groups.computeIfAbsent(entry.group(), k->new HashMap<>()).computeIfAbsent(prototype, k->new PriceHistogram()).add(entry.price());
+    entries.put(location, entry);
+  }
+
+  /**
+   * Removes the price of the shop.
+   *
+   * @param shop The shop
+   */
+  public synchronized void remove(@NotNull final Shop shop) {
+
+    final Entry entry = entries.get(shop.getLocation());
+    if(entry == null || entry.shop() != shop) {
+      return;
+    }
+    entries.remove(shop.getLocation());
+    unlink(entry);
+  }
+
+  private void unlink(@NotNull final Entry entry) {
+
+    final Map<ItemStack, PriceHistogram> items = groups.get(entry.group());
+    if(items == null) {
+      return;
+    }
+    final PriceHistogram histogram = items.get(entry.prototype());
+    if(histogram == null) {
+      return;
+    }
+    histogram.remove(entry.price());
+    if(histogram.count == 0) {
+      items.remove(entry.prototype());
+      if(items.isEmpty()) {
+        groups.remove(entry.group());
+      }
+    }
+  }
+
+  public synchronized void clear() {
+
+    groups.clear();
+    entries.clear();
+  }
+
+  /**
+   * Gets the price statistics of the shops that trading the item.
+   *
+   * @param item     The item
+   * @param shopType The shop type
+   * @param currency The currency, null for the default currency
+   * @param exclude  The shop that won't be counted, e.g. the shop that asking the suggestion
+   *
+   * @return The price statistics
+   */
+  @NotNull
+  public synchronized PriceStatistics query(@NotNull final ItemStack item, @NotNull final ShopType shopType, @Nullable final String currency, @Nullable final Shop exclude) {
+
+    queries.increment();
+    final Map<ItemStack, PriceHistogram> items = groups.get(new GroupKey(item.getType(), shopType, currency));
+    if(items == null) {
+      return PriceStatistics.EMPTY;
+    }
+    final TreeMap<Double, Integer> merged = new TreeMap<>();
+    for(final Map.Entry<ItemStack, PriceHistogram> histogram : items.entrySet()) {
+      if(plugin.getItemMatcher().matches(item, histogram.getKey())) {
+        histogram.getValue().prices.forEach((price, count)->merged.merge(price, count, Integer::sum));
+      }
+    }
+    if(exclude != null) {
+      final Entry excluded = entries.get(exclude.getLocation());
+      if(excluded != null && excluded.shop() == exclude) {
+        merged.computeIfPresent(excluded.price(), (price, count)->count == 1? null : count - 1);
+      }
+    }
+    return statisticsOf(merged);
+  }
+
+  @NotNull
+  private static PriceStatistics statisticsOf(@NotNull final TreeMap<Double, Integer> prices) {
+
+    if(prices.isEmpty()) {
+      return PriceStatistics.EMPTY;
+    }
+    int count = 0;
+    double sum = 0;
+    for(final Map.Entry<Double, Integer> entry : prices.entrySet()) {
+      count += entry.getValue();
+      sum += entry.getKey() * entry.getValue();
+    }
+    // Same as CommonUtil#med, the mean of two middle prices if the count is even
+    final int lowerMiddle = (count - 1) / 2;
+    final int upperMiddle = count / 2;
+    double lower = 0;
+    double upper = 0;
+    int seen = 0;
+    for(final Map.Entry<Double, Integer> entry : prices.entrySet()) {
+      final int next = seen + entry.getValue();
+      if(lowerMiddle >= seen && lowerMiddle < next) {
+        lower = entry.getKey();
+      }
+      if(upperMiddle >= seen && upperMiddle < next) {
+        upper = entry.getKey();
+        break;
+      }
+      seen = next;
+    }
+    return new PriceStatistics(count, prices.firstKey(), prices.lastKey(), sum / count, (lower + upper) / 2);
+  }
+
+  @Override
+  public @NotNull String genBody() {
+
+    final int groupCount;
+    final int indexed;
+    synchronized(this) {
+      groupCount = groups.size();
+      indexed = entries.size();
+    }
+    final HTMLTable table = new HTMLTable(2, true);
+    table.insert("Indexed Shops", String.valueOf(indexed));
+    table.insert("Groups", String.valueOf(groupCount));
+    table.insert("Queries", String.valueOf(queries.sum()));
+    return table.render();
+  }
+
+  @Override
+  public @NotNull String getTitle() {
+
+    return "Shop Price Statistics";
+  }
+
+  private record GroupKey(@NotNull Material material, @NotNull ShopType shopType, @Nullable String currency) {
+
+  }
+
+  private record Entry(@NotNull Shop shop, @NotNull GroupKey group, @NotNull ItemStack prototype, double price) {
+
+  }
+
+  /**
+   * The prices of the shops that trading the same item, as the count of each distinct price, so the
+   * prices can be removed and the median can be found without sorting.
+   */
+  private static class PriceHistogram {
+
+    private final TreeMap<Double, Integer> prices = new TreeMap<>();
+    private int count;
+
+    private void add(final double price) {
+
+      prices.merge(price, 1, Integer::sum);
+      count++;
+    }
+
+    private void remove(final double price) {
+
+      final Integer priceCount = prices.get(price);
+      if(priceCount == null) {
+        return;
+      }
+      if(priceCount == 1) {
+        prices.remove(price);
+      } else {
+        prices.put(price, priceCount - 1);
+      }
+      count--;
+    }
+  }
+}
@@ -471,7 +471,7 @@ public class SimpleShopManager extends AbstractShopManager implements ShopManage
     plugin.logger().info("Unloading loaded shops...");
     getLoadedShops().forEach(this::unloadShop);
     plugin.logger().info("Saving shops, please allow up to 30 seconds for flush changes into database...");
-    final CompletableFuture<?> saveTask = CompletableFuture.allOf(plugin.getShopManager().getAllShops().stream().filter(Shop::isDirty).map(Shop::update).toArray(CompletableFuture[]::new));
+    final CompletableFuture<?> saveTask = saveDirtyShops();
     try {
       if(PackageUtil.parsePackageProperly("unlimitedWait").asBoolean()) {
         saveTask.get();
@@ -485,6 +485,12 @@ public class SimpleShopManager extends AbstractShopManager implements ShopManage
     }
     this.interactiveManager.reset();
     this.shops.clear();
+    this.occupancyFilter.clear();
+    this.itemSearchIndex.clear();
+    this.priceStatistics.clear();
+    this.inventorySnapshots.clear();
+    this.shopsById.clear();
+    this.shopsByOwner.clear();
     shopCache.invalidateAll(null);
   }
 
@@ -657,9 +663,9 @@ public class SimpleShopManager extends AbstractShopManager implements ShopManage
     if(plugin.getRankLimiter().isLimit()) {
       int owned = 0;
       if(useOldCanBuildAlgorithm) {
-        owned = getAllShops(p).size();
+        owned = getOwnedShops(p).size();
       } else {
-        for(final Shop shop : getAllShops(p)) {
+        for(final Shop shop : getOwnedShops(p)) {
           if(!shop.isUnlimited()) {
             owned++;
           }
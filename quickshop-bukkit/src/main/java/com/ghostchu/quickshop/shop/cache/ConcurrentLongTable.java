@@ -0,0 +1,195 @@
+package com.ghostchu.quickshop.shop.cache;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A primitive long keyed open-addressing hash table, the reads are lock-free and the writes are
+ * serialized by the table monitor.
+ * <p>
+ * A slot becomes visible to the readers when its value is published with release semantics, the
+ * key of a published slot never changes, so a reader that acquired a value always sees the right
+ * key. Removed slots are kept as tombstones until the next rehash.
+ *
+ * @param <V> The value type
+ */
+@ApiStatus.Internal
+public final class ConcurrentLongTable<V> {
+
+  private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+  private static final Object TOMBSTONE = new Object();
+  private static final int MIN_CAPACITY = 8;
+  private volatile Table table = new Table(MIN_CAPACITY);
+  private int size;
+  private int used;
+
+  private static int slot(final long key, final int mask) {
+
+    final long hash = key * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32)) & mask;
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(final long key) {
+
+    final Table current = this.table;
+    final long[] keys = current.keys;
+    final Object[] values = current.values;
+    int index = slot(key, current.mask);
+    while(true) {
+      final Object value = VALUES.getAcquire(values, index);
+      if(value == null) {
+        return null;
+      }
+      if(keys[index] == key) {
+        return value == TOMBSTONE? null : (V)value;
+      }
+      index = (index + 1) & current.mask;
+    }
+  }
+
+  public synchronized void put(final long key, @NotNull final V value) {
+
+    Table current = this.table;
+    int index = slot(key, current.mask);
+    while(true) {
+      final Object existing = current.values[index];
+      if(existing == null) {
+        break;
+      }
+      if(current.keys[index] == key) {
+        if(existing == TOMBSTONE) {
+          size++;
+        }
+        VALUES.setRelease(current.values, index, value);
+        return;
+      }
+      index = (index + 1) & current.mask;
+    }
+    if((used + 1) * 2 > current.keys.length) {
+      current = rehash(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size + 1) * 4)));
+      index = slot(key, current.mask);
+      while(current.values[index] != null) {
+        index = (index + 1) & current.mask;
+      }
+    }
+    current.keys[index] = key;
+    VALUES.setRelease(current.values, index, value);
+    size++;
+    used++;
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public synchronized V remove(final long key) {
+
+    final Table current = this.table;
+    int index = slot(key, current.mask);
+    while(true) {
+      final Object existing = current.values[index];
+      if(existing == null) {
+        return null;
+      }
+      if(current.keys[index] == key) {
+        if(existing == TOMBSTONE) {
+          return null;
+        }
+        VALUES.setRelease(current.values, index, TOMBSTONE);
+        size--;
+        return (V)existing;
+      }
+      index = (index + 1) & current.mask;
+    }
+  }
+
+  /**
+   * Removes all values matching the predicate.
+   *
+   * @param filter The filter
+   *
+   * @return The count of removed values
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized int removeIf(@NotNull final Predicate<V> filter) {
+
+    final Table current = this.table;
+    int removed = 0;
+    for(int i = 0; i < current.values.length; i++) {
+      final Object existing = current.values[i];
+      if(existing != null && existing != TOMBSTONE && filter.test((V)existing)) {
+        VALUES.setRelease(current.values, i, TOMBSTONE);
+        removed++;
+      }
+    }
+    size -= removed;
+    return removed;
+  }
+
+  @SuppressWarnings("unchecked")
+  public void forEach(@NotNull final Consumer<V> consumer) {
+
+    final Object[] values = this.table.values;
+    for(int i = 0; i < values.length; i++) {
+      final Object value = VALUES.getAcquire(values, i);
+      if(value != null && value != TOMBSTONE) {
+        consumer.accept((V)value);
+      }
+    }
+  }
+
+  public synchronized void clear() {
+
+    this.table = new Table(MIN_CAPACITY);
+    this.size = 0;
+    this.used = 0;
+  }
+
+  public synchronized int size() {
+
+    return size;
+  }
+
+  @NotNull
+  private Table rehash(final int capacity) {
+
+    final Table old = this.table;
+    final Table rehashed = new Table(capacity);
+    for(int i = 0; i < old.values.length; i++) {
+      final Object value = old.values[i];
+      if(value == null || value == TOMBSTONE) {
+        continue;
+      }
+      int index = slot(old.keys[i], rehashed.mask);
+      while(rehashed.values[index] != null) {
+        index = (index + 1) & rehashed.mask;
+      }
+      rehashed.keys[index] = old.keys[i];
+      rehashed.values[index] = value;
+    }
+    this.used = size;
+    // Published by the volatile write
+    this.table = rehashed;
+    return rehashed;
+  }
+
+  private static final class Table {
+
+    private final long[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    private Table(final int capacity) {
+
+      this.keys = new long[capacity];
+      this.values = new Object[capacity];
+      this.mask = capacity - 1;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.ghostchu.quickshop.shop.cache;
+
+import org.bukkit.Location;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Packs block coordinates into a primitive long, so the block lookups don't need to allocate and
+ * hash the mutable {@link Location} objects.
+ * <p>
+ * Layout: x (26 bits) | z (26 bits) | y (12 bits), the same as vanilla.
+ */
+public final class PackedBlockPos {
+
+  private static final int XZ_BITS = 26;
+  private static final int Y_BITS = 12;
+  private static final long XZ_MASK = (1L << XZ_BITS) - 1;
+  private static final long Y_MASK = (1L << Y_BITS) - 1;
+
+  private PackedBlockPos() {
+
+  }
+
+  public static long pack(final int x, final int y, final int z) {
+
+    return ((x & XZ_MASK) << (XZ_BITS + Y_BITS)) | ((z & XZ_MASK) << Y_BITS) | (y & Y_MASK);
+  }
+
+  public static long pack(@NotNull final Location location) {
+
+    return pack(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+  }
+
+  public static int unpackX(final long packed) {
+
+    return (int)(packed >> (XZ_BITS + Y_BITS));
+  }
+
+  public static int unpackY(final long packed) {
+
+    return (int)(packed << (64 - Y_BITS) >> (64 - Y_BITS));
+  }
+
+  public static int unpackZ(final long packed) {
+
+    return (int)(packed << (64 - XZ_BITS - Y_BITS) >> (64 - XZ_BITS));
+  }
+
+  /**
+   * Packs the chunk coordinates into a primitive long.
+   *
+   * @param chunkX The chunk x
+   * @param chunkZ The chunk z
+   *
+   * @return The packed chunk key
+   */
+  public static long chunkKey(final int chunkX, final int chunkZ) {
+
+    return ((long)chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Packs the chunk coordinates of given block location into a primitive long.
+   *
+   * @param location The block location
+   *
+   * @return The packed chunk key
+   */
+  public static long chunkKey(@NotNull final Location location) {
+
+    return chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+  }
+}
@@ -0,0 +1,192 @@
+package com.ghostchu.quickshop.shop.cache;
+
+import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
+import com.ghostchu.quickshop.util.paste.util.HTMLTable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The last counted stock and space of the shops, keyed by shop id. The counts are recorded when the
+ * shop inventory counted on the main (or region) thread, so the readers on other threads can get
+ * them without blocking on the database.
+ * <p>
+ * The stock and space are packed into one long and published with the count time as an immutable
+ * snapshot, so the readers never see a half updated snapshot.
+ */
+public class ShopInventorySnapshotTable implements SubPasteItem {
+
+  /**
+   * The stock or space that never counted.
+   */
+  public static final int UNKNOWN = Integer.MIN_VALUE;
+  private final ConcurrentLongTable<Snapshot> snapshots = new ConcurrentLongTable<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private static long pack(final int stock, final int space) {
+
+    return ((long)stock << 32) | (space & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Records the stock of the shop.
+   *
+   * @param shopId The shop id
+   * @param stock  The stock
+   */
+  public void recordStock(final long shopId, final int stock) {
+
+    record(shopId, stock, UNKNOWN);
+  }
+
+  /**
+   * Records the space of the shop.
+   *
+   * @param shopId The shop id
+   * @param space  The space
+   */
+  public void recordSpace(final long shopId, final int space) {
+
+    record(shopId, UNKNOWN, space);
+  }
+
+  /**
+   * Records the stock and space of the shop, the {@link #UNKNOWN} values keep the previous ones.
+   *
+   * @param shopId The shop id
+   * @param stock  The stock
+   * @param space  The space
+   */
+  public void record(final long shopId, final int stock, final int space) {
+
+    if(shopId < 1) {
+      return;
+    }
+    synchronized(snapshots) {
+      final Snapshot previous = snapshots.get(shopId);
+      final int mergedStock = stock == UNKNOWN && previous != null? previous.getStock() : stock;
+      final int mergedSpace = space == UNKNOWN && previous != null? previous.getSpace() : space;
+      snapshots.put(shopId, new Snapshot(pack(mergedStock, mergedSpace), System.currentTimeMillis()));
+    }
+  }
+
+  /**
+   * Records the stock and space of the shop only for the sides that still {@link #UNKNOWN}, so a
+   * stale value (e.g. read from the database) never overwrites a fresh count.
+   *
+   * @param shopId The shop id
+   * @param stock  The stock
+   * @param space  The space
+   *
+   * @return The snapshot after recorded, null if the shop id invalid
+   */
+  @Nullable
+  public Snapshot recordIfUnknown(final long shopId, final int stock, final int space) {
+
+    if(shopId < 1) {
+      return null;
+    }
+    synchronized(snapshots) {
+      final Snapshot previous = snapshots.get(shopId);
+      if(previous == null) {
+        final Snapshot snapshot = new Snapshot(pack(stock, space), System.currentTimeMillis());
+        snapshots.put(shopId, snapshot);
+        return snapshot;
+      }
+      final int mergedStock = previous.getStock() == UNKNOWN? stock : previous.getStock();
+      final int mergedSpace = previous.getSpace() == UNKNOWN? space : previous.getSpace();
+      if(mergedStock == previous.getStock() && mergedSpace == previous.getSpace()) {
+        return previous;
+      }
+      final Snapshot snapshot = new Snapshot(pack(mergedStock, mergedSpace), previous.countedAt());
+      snapshots.put(shopId, snapshot);
+      return snapshot;
+    }
+  }
+
+  /**
+   * Gets the last counted stock of the shop.
+   *
+   * @param shopId The shop id
+   *
+   * @return The stock, {@link #UNKNOWN} if the stock never counted since boot
+   */
+  public int getStock(final long shopId) {
+
+    return getCount(shopId, true);
+  }
+
+  /**
+   * Gets the last counted space of the shop.
+   *
+   * @param shopId The shop id
+   *
+   * @return The space, {@link #UNKNOWN} if the space never counted since boot
+   */
+  public int getSpace(final long shopId) {
+
+    return getCount(shopId, false);
+  }
+
+  private int getCount(final long shopId, final boolean stock) {
+
+    final Snapshot snapshot = shopId < 1? null : snapshots.get(shopId);
+    final int count = snapshot == null? UNKNOWN : stock? snapshot.getStock() : snapshot.getSpace();
+    if(count == UNKNOWN) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return count;
+  }
+
+  public void remove(final long shopId) {
+
+    if(shopId < 1) {
+      return;
+    }
+    snapshots.remove(shopId);
+  }
+
+  public void clear() {
+
+    snapshots.clear();
+  }
+
+  @Override
+  public @NotNull String genBody() {
+
+    final HTMLTable table = new HTMLTable(2, true);
+    table.insert("Snapshots", String.valueOf(snapshots.size()));
+    table.insert("Hits", String.valueOf(hits.sum()));
+    table.insert("Misses (Database Lookups)", String.valueOf(misses.sum()));
+    return table.render();
+  }
+
+  @Override
+  public @NotNull String getTitle() {
+
+    return "Shop Inventory Snapshots";
+  }
+
+  /**
+   * The stock and space of a shop at the count time.
+   *
+   * @param packed    The stock (high 32 bits) and space (low 32 bits)
+   * @param countedAt The count time in milliseconds
+   */
+  public record Snapshot(long packed, long countedAt) {
+
+    public int getStock() {
+
+      return (int)(packed >> 32);
+    }
+
+    public int getSpace() {
+
+      return (int)packed;
+    }
+  }
+}
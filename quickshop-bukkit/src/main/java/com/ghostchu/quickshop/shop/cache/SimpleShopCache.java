@@ -7,93 +7,76 @@ import com.ghostchu.quickshop.api.shop.cache.ShopCacheNamespacedKey;
 import com.ghostchu.quickshop.util.logger.Log;
 import com.ghostchu.quickshop.util.paste.GuavaCacheRender;
 import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheStats;
-import org.apache.commons.lang3.tuple.Pair;
+import com.tcoded.folialib.wrapper.task.WrappedTask;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 public class SimpleShopCache implements SubPasteItem, ShopCache {
 
+  private static final long EXPIRE_AFTER_ACCESS_MILLIS = TimeUnit.MINUTES.toMillis(3);
   private final QuickShop plugin;
-  private final Map<ShopCacheNamespacedKey, Cache<Location, BoxedShop>> CACHES = new HashMap<>();
-  private final Map<ShopCacheNamespacedKey, Function<Location, Shop>> CACHE_VALUE_PROVIDER = new HashMap<>();
+  private final Map<ShopCacheNamespacedKey, BlockCache> CACHES = new EnumMap<>(ShopCacheNamespacedKey.class);
+  private final WrappedTask expireTask;
 
-  public SimpleShopCache(@NotNull final QuickShop plugin, @NotNull final Map<@NotNull ShopCacheNamespacedKey, @NotNull Pair<@NotNull Function<Location, Shop>, @Nullable Cache<Location, BoxedShop>>> initArgs) {
+  public SimpleShopCache(@NotNull final QuickShop plugin, @NotNull final Map<@NotNull ShopCacheNamespacedKey, @NotNull Function<Location, Shop>> valueProviders) {
 
     this.plugin = plugin;
     this.plugin.getPasteManager().register(plugin.getJavaPlugin(), this);
-    for(final Map.Entry<ShopCacheNamespacedKey, Pair<Function<Location, Shop>, Cache<Location, BoxedShop>>> entry : initArgs.entrySet()) {
+    for(final Map.Entry<ShopCacheNamespacedKey, Function<Location, Shop>> entry : valueProviders.entrySet()) {
       final ShopCacheNamespacedKey namespacedKey = entry.getKey();
-      if(CACHES.containsKey(namespacedKey) || CACHE_VALUE_PROVIDER.containsKey(namespacedKey)) {
+      if(CACHES.containsKey(namespacedKey)) {
         throw new IllegalArgumentException("The namespaced key " + namespacedKey.name() + " already registered.");
       }
-      final Pair<Function<Location, Shop>, Cache<Location, BoxedShop>> pair = entry.getValue();
-      final Function<Location, Shop> valueProvider = pair.getLeft();
+      final Function<Location, Shop> valueProvider = entry.getValue();
       if(valueProvider == null) {
         throw new IllegalArgumentException("The shop value provider cannot be null!");
       }
-      Cache<Location, BoxedShop> cacheContainer = pair.getRight();
-      if(cacheContainer == null) {
-        cacheContainer = CacheBuilder.newBuilder().expireAfterAccess(3, TimeUnit.MINUTES).recordStats().build();
-      }
-      CACHES.put(namespacedKey, cacheContainer);
-      CACHE_VALUE_PROVIDER.put(namespacedKey, valueProvider);
+      CACHES.put(namespacedKey, new BlockCache(valueProvider));
       Log.debug("Shop cache " + namespacedKey.name() + " registered.");
     }
+    this.expireTask = QuickShop.folia().getImpl().runTimerAsync(this::expireEntries, 20L * 60, 20L * 60);
   }
 
-  public Map<ShopCacheNamespacedKey, Cache<Location, BoxedShop>> getCaches() {
+  public Map<ShopCacheNamespacedKey, BlockCache> getCaches() {
 
     return CACHES;
   }
 
-  @Nullable
-  @Override
-  public Shop get(@NotNull final ShopCacheNamespacedKey namespacedKey, @NotNull final Location location, final boolean allowLoading) {
+  @NotNull
+  private BlockCache getCache(@NotNull final ShopCacheNamespacedKey namespacedKey) {
 
-    final Cache<Location, BoxedShop> targetCacheContainer = CACHES.get(namespacedKey);
+    final BlockCache targetCacheContainer = CACHES.get(namespacedKey);
     if(targetCacheContainer == null) {
       throw new IllegalArgumentException("Shop cache container " + namespacedKey.name() + " not exists!");
     }
-    if(!allowLoading) {
-      final BoxedShop boxedShop = targetCacheContainer.getIfPresent(location);
-      if(boxedShop == null) {
-        return null;
-      }
-      return boxedShop.getShop();
-    }
-    final Function<Location, Shop> provider = CACHE_VALUE_PROVIDER.get(namespacedKey);
-    if(provider == null) {
-      throw new IllegalArgumentException("Shop cache provider " + namespacedKey.name() + " not exists");
-    }
-    try {
-      return targetCacheContainer.get(location, ()->new BoxedShop(provider.apply(location))).getShop();
-    } catch(ExecutionException e) {
-      plugin.logger().warn("Loading shops into cache failure, fallback to direct access", e);
-      return provider.apply(location);
-    }
+    return targetCacheContainer;
+  }
+
+  @Nullable
+  @Override
+  public Shop get(@NotNull final ShopCacheNamespacedKey namespacedKey, @NotNull final Location location, final boolean allowLoading) {
+
+    return getCache(namespacedKey).get(location, allowLoading);
   }
 
   @Override
   public void invalidateAll(@Nullable final ShopCacheNamespacedKey namespacedKey) {
 
     if(namespacedKey == null) {
-      CACHES.values().forEach(Cache::invalidateAll);
+      CACHES.values().forEach(BlockCache::invalidateAll);
     } else {
-      final Cache<Location, BoxedShop> targetCacheContainer = CACHES.get(namespacedKey);
-      if(targetCacheContainer == null) {
-        throw new IllegalArgumentException("Shop cache container " + namespacedKey.name() + " not exists!");
-      }
-      targetCacheContainer.invalidateAll();
+      getCache(namespacedKey).invalidateAll();
     }
   }
 
@@ -104,11 +87,7 @@ public class SimpleShopCache implements SubPasteItem, ShopCache {
     if(namespacedKey == null) {
       CACHES.values().forEach(c->c.invalidate(location));
     } else {
-      final Cache<Location, BoxedShop> targetCacheContainer = CACHES.get(namespacedKey);
-      if(targetCacheContainer == null) {
-        throw new IllegalArgumentException("Shop cache container " + namespacedKey.name() + " not exists!");
-      }
-      targetCacheContainer.invalidate(location);
+      getCache(namespacedKey).invalidate(location);
     }
   }
 
@@ -116,18 +95,30 @@ public class SimpleShopCache implements SubPasteItem, ShopCache {
   @NotNull
   public CacheStats getCacheStats(@NotNull final ShopCacheNamespacedKey namespacedKey) {
 
-    final Cache<Location, BoxedShop> targetCacheContainer = CACHES.get(namespacedKey);
-    if(targetCacheContainer == null) {
-      throw new IllegalArgumentException("Shop cache container " + namespacedKey.name() + " not exists!");
-    }
-    return targetCacheContainer.stats();
+    return getCache(namespacedKey).stats();
+  }
+
+  private void expireEntries() {
+
+    final long expireBefore = System.currentTimeMillis() - EXPIRE_AFTER_ACCESS_MILLIS;
+    CACHES.values().forEach(cache->cache.expire(expireBefore));
+  }
+
+  /**
+   * Stops expiring the entries and removes this cache from the paste, called when the cache is
+   * replaced.
+   */
+  public void shutdown() {
+
+    expireTask.cancel();
+    plugin.getPasteManager().unregister(plugin.getJavaPlugin(), this);
   }
 
   @Override
   public @NotNull String genBody() {
 
     final StringBuilder builder = new StringBuilder();
-    for(final Map.Entry<ShopCacheNamespacedKey, Cache<Location, BoxedShop>> entry : CACHES.entrySet()) {
+    for(final Map.Entry<ShopCacheNamespacedKey, BlockCache> entry : CACHES.entrySet()) {
       builder.append("<h5>").append(entry.getKey().name()).append("</h5>");
       builder.append(renderTable(entry.getValue().stats()));
     }
@@ -146,4 +137,132 @@ public class SimpleShopCache implements SubPasteItem, ShopCache {
 
     return "Shop Caching";
   }
+
+  /**
+   * The cache of one namespaced key, keyed by world uid, then packed chunk key, then packed block
+   * position, so the lookups don't allocate or hash the Location objects. Entries expire by chunk
+   * after not accessed for a while.
+   */
+  public static class BlockCache {
+
+    private final Function<Location, Shop> valueProvider;
+    private final Map<UUID, ConcurrentLongTable<ChunkCache>> worlds = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadExceptionCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private BlockCache(@NotNull final Function<Location, Shop> valueProvider) {
+
+      this.valueProvider = valueProvider;
+    }
+
+    @Nullable
+    public Shop get(@NotNull final Location location, final boolean allowLoading) {
+
+      final World world = location.getWorld();
+      if(world == null) {
+        return allowLoading? valueProvider.apply(location) : null;
+      }
+      final long chunkKey = PackedBlockPos.chunkKey(location);
+      final long blockKey = PackedBlockPos.pack(location);
+      ConcurrentLongTable<ChunkCache> chunks = worlds.get(world.getUID());
+      ChunkCache chunk = chunks == null? null : chunks.get(chunkKey);
+      if(chunk != null) {
+        final BoxedShop boxedShop = chunk.access(blockKey);
+        if(boxedShop != null) {
+          hitCount.increment();
+          return boxedShop.getShop();
+        }
+      }
+      missCount.increment();
+      if(!allowLoading) {
+        return null;
+      }
+      final long loadStartAt = System.nanoTime();
+      final Shop shop;
+      try {
+        shop = valueProvider.apply(location);
+      } catch(RuntimeException e) {
+        loadExceptionCount.increment();
+        totalLoadTime.add(System.nanoTime() - loadStartAt);
+        throw e;
+      }
+      loadSuccessCount.increment();
+      totalLoadTime.add(System.nanoTime() - loadStartAt);
+      if(chunks == null) {
+        chunks = worlds.computeIfAbsent(world.getUID(), uid->new ConcurrentLongTable<>());
+      }
+      if(chunk == null) {
+        synchronized(chunks) {
+          chunk = chunks.get(chunkKey);
+          if(chunk == null) {
+            chunk = new ChunkCache();
+            chunks.put(chunkKey, chunk);
+          }
+        }
+      }
+      chunk.entries.put(blockKey, new BoxedShop(shop));
+      return shop;
+    }
+
+    public void invalidate(@NotNull final Location location) {
+
+      final World world = location.getWorld();
+      if(world == null) {
+        return;
+      }
+      final ConcurrentLongTable<ChunkCache> chunks = worlds.get(world.getUID());
+      if(chunks == null) {
+        return;
+      }
+      final ChunkCache chunk = chunks.get(PackedBlockPos.chunkKey(location));
+      if(chunk != null) {
+        chunk.entries.remove(PackedBlockPos.pack(location));
+      }
+    }
+
+    public void invalidateAll() {
+
+      worlds.clear();
+    }
+
+    private void expire(final long expireBefore) {
+
+      for(final ConcurrentLongTable<ChunkCache> chunks : worlds.values()) {
+        chunks.removeIf(chunk->{
+          if(chunk.lastAccess >= expireBefore) {
+            return false;
+          }
+          evictionCount.add(chunk.entries.size());
+          return true;
+        });
+      }
+    }
+
+    @NotNull
+    public CacheStats stats() {
+
+      return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadExceptionCount.sum(), totalLoadTime.sum(), evictionCount.sum());
+    }
+  }
+
+  private static class ChunkCache {
+
+    private final ConcurrentLongTable<BoxedShop> entries = new ConcurrentLongTable<>();
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    @Nullable
+    private BoxedShop access(final long blockKey) {
+
+      final long now = System.currentTimeMillis();
+      // Coarse access time is enough for expiring, avoid writing the shared field on every lookup
+      if(now - lastAccess > 1000) {
+        lastAccess = now;
+      }
+      return entries.get(blockKey);
+    }
+  }
 }
@@ -1,75 +1,135 @@
-//package com.ghostchu.quickshop.shop.inventory;
-//
-//import com.ghostchu.quickshop.QuickShop;
-//import com.ghostchu.quickshop.listener.AbstractQSListener;
-//import com.ghostchu.quickshop.util.Util;
-//import com.ghostchu.quickshop.util.logger.Log;
-//import com.google.common.collect.Lists;
-//import org.bukkit.Bukkit;
-//import org.bukkit.Location;
-//import org.bukkit.Material;
-//import org.bukkit.block.Block;
-//import org.bukkit.block.BlockState;
-//import org.bukkit.event.EventHandler;
-//import org.bukkit.event.EventPriority;
-//import org.bukkit.event.block.BlockPlaceEvent;
-//import org.bukkit.inventory.DoubleChestInventory;
-//import org.bukkit.inventory.InventoryHolder;
-//
-//import java.lang.ref.WeakReference;
-//import java.util.ArrayList;
-//import java.util.Iterator;
-//import java.util.List;
-//
-//public class InventoryWrapperUpdateManager extends AbstractQSListener {
-//    private final List<Material> checkList = Lists.newArrayList(Material.CHEST, Material.TRAPPED_CHEST);
-//    private final List<WeakReference<BukkitListenerDrivenInventoryListener>> registeredListeners = new ArrayList<>();
-//
-//    public InventoryWrapperUpdateManager(QuickShop plugin) {
-//        super(plugin);
-//    }
-//
-//    private synchronized void notifyAllListeners(Location... locs) {
-//        synchronized (registeredListeners) {
-//            Iterator<WeakReference<BukkitListenerDrivenInventoryListener>> it = registeredListeners.iterator();
-//            while (it.hasNext()) {
-//                WeakReference<BukkitListenerDrivenInventoryListener> ref = it.next();
-//                BukkitListenerDrivenInventoryListener listener = ref.get();
-//                if (listener == null) {
-//                    it.remove();
-//                    continue;
-//                }
-//                for (Location loc : locs) {
-//                    try {
-//                        if (listener.notify(loc)) {
-//                            Log.debug("Successfully notified listener " + listener + " which need to be update");
-//                        }
-//                    } catch (Throwable e) {
-//                        plugin.logger().warn("Failed to notify inventory possible update to listener: {}", listener, e);
-//                    }
-//                }
-//            }
-//        }
-//    }
-//
-//    public void registerListener(BukkitListenerDrivenInventoryListener listener) {
-//        this.registeredListeners.add(new WeakReference<>(listener));
-//    }
-//
-//    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
-//    public void onInventoryRelatedBlockPlaced(BlockPlaceEvent event) {
-//        Block placed = event.getBlockPlaced();
-//        if (!checkList.contains(placed.getType())) {
-//            return;
-//        }
-//        // Delay 1 tick to allow chest merge
-//        QuickShop.folia().getImpl().runLater(() -> {
-//            BlockState state = placed.getState();
-//            if (state instanceof InventoryHolder holder) {
-//                if (holder.getInventory() instanceof DoubleChestInventory doubleChestInventory) {
-//                    Util.asyncThreadRun(() -> notifyAllListeners(doubleChestInventory.getLeftSide().getLocation(), doubleChestInventory.getRightSide().getLocation()));
-//                }
-//            }
-//        }, 1L);
-//    }
-//}
+package com.ghostchu.quickshop.shop.inventory;
+
+import com.ghostchu.quickshop.QuickShop;
+import com.ghostchu.quickshop.api.shop.Shop;
+import com.ghostchu.quickshop.listener.AbstractQSListener;
+import com.ghostchu.quickshop.util.Util;
+import com.ghostchu.simplereloadlib.ReloadResult;
+import com.ghostchu.simplereloadlib.ReloadStatus;
+import lombok.Getter;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryPickupItemEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.DoubleChestInventory;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Watches the Bukkit inventory events and notifies the shops that their container may have been
+ * changed, so the shops can keep their stock/space counters until the inventory actually changed.
+ */
+public class InventoryWrapperUpdateManager extends AbstractQSListener {
+
+  @Getter
+  private boolean enabled;
+  @Getter
+  private long maxAgeMillis;
+
+  public InventoryWrapperUpdateManager(final QuickShop plugin) {
+
+    super(plugin);
+    init();
+  }
+
+  private void init() {
+
+    this.enabled = plugin.getConfig().getBoolean("shop.inventory-count-cache.enable", true);
+    this.maxAgeMillis = Math.max(0, plugin.getConfig().getLong("shop.inventory-count-cache.max-age-seconds", 30)) * 1000L;
+  }
+
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  public void onInventoryClick(final InventoryClickEvent event) {
+
+    notifyInventory(event.getView().getTopInventory());
+  }
+
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  public void onInventoryDrag(final InventoryDragEvent event) {
+
+    notifyInventory(event.getView().getTopInventory());
+  }
+
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  public void onInventoryMove(final InventoryMoveItemEvent event) {
+
+    notifyInventory(event.getSource());
+    notifyInventory(event.getDestination());
+  }
+
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  public void onInventoryPickup(final InventoryPickupItemEvent event) {
+
+    notifyInventory(event.getInventory());
+  }
+
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  public void onInventoryRelatedBlockPlaced(final BlockPlaceEvent event) {
+
+    final Block placed = event.getBlockPlaced();
+    if(!enabled || !Util.isShoppables(placed.getType())) {
+      return;
+    }
+    // Delay 1 tick to allow chest merge
+    Util.regionThread(placed.getLocation(), ()->{
+      if(placed.getState() instanceof final InventoryHolder holder) {
+        notifyInventory(holder.getInventory());
+      }
+    });
+  }
+
+  @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+  public void onInventoryRelatedBlockBreak(final BlockBreakEvent event) {
+
+    // Breaking a half of double chest shrinks the other half
+    if(enabled && Util.isShoppables(event.getBlock().getType()) && event.getBlock().getState() instanceof final InventoryHolder holder) {
+      notifyInventory(holder.getInventory());
+    }
+  }
+
+  private void notifyInventory(@Nullable final Inventory inventory) {
+
+    if(!enabled || inventory == null) {
+      return;
+    }
+    if(inventory.getType() == InventoryType.PLAYER || inventory.getType() == InventoryType.CRAFTING) {
+      return;
+    }
+    if(inventory instanceof final DoubleChestInventory doubleChestInventory) {
+      notifyLocation(doubleChestInventory.getLeftSide().getLocation());
+      notifyLocation(doubleChestInventory.getRightSide().getLocation());
+    } else {
+      notifyLocation(inventory.getLocation());
+    }
+  }
+
+  private void notifyLocation(@Nullable final Location location) {
+
+    if(location == null || location.getWorld() == null) {
+      return;
+    }
+    final Shop shop = plugin.getShopManager().getShop(location, true);
+    if(shop instanceof final BukkitListenerDrivenInventoryListener listener) {
+      try {
+        listener.notify(location);
+      } catch(final Throwable e) {
+        plugin.logger().warn("Failed to notify inventory possible update to listener: {}", listener, e);
+      }
+    }
+  }
+
+  @Override
+  public ReloadResult reloadModule() {
+
+    init();
+    return ReloadResult.builder().status(ReloadStatus.SUCCESS).build();
+  }
+}
@@ -0,0 +1,122 @@
+package com.ghostchu.quickshop.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches the results of {@link Util#serialize(ItemStack)} and {@link Util#deserialize(String)}, and
+ * interns the equal ItemStacks so the shops selling the same item can share one prototype.
+ * <p>
+ * The ItemStacks stored in this cache are shared, they MUST NOT be modified.
+ */
+@ApiStatus.Internal
+public class ItemStackCache {
+
+  private final Cache<String, ItemStack> deserializeCache;
+  private final Cache<ItemStack, String> serializeCache;
+  private final Interner<ItemStack> prototypes = Interners.newWeakInterner();
+
+  public ItemStackCache(final int maximumSize) {
+
+    this.deserializeCache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+    this.serializeCache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Gets the shared prototype that deserialized from given string.
+   *
+   * @param serialized The serialized ItemStack
+   *
+   * @return The shared prototype, DO NOT modify it. Null if not cached.
+   */
+  @Nullable
+  public ItemStack getDeserialized(@NotNull final String serialized) {
+
+    return deserializeCache.getIfPresent(serialized);
+  }
+
+  /**
+   * Caches the deserialized ItemStack.
+   *
+   * @param serialized The serialized ItemStack
+   * @param stack      The deserialized ItemStack, a copy will be cached
+   *
+   * @return The shared prototype, DO NOT modify it.
+   */
+  @NotNull
+  public ItemStack putDeserialized(@NotNull final String serialized, @NotNull final ItemStack stack) {
+
+    final ItemStack prototype = intern(stack.clone());
+    deserializeCache.put(serialized, prototype);
+    return prototype;
+  }
+
+  /**
+   * Gets the cached serialized string of given ItemStack.
+   *
+   * @param stack The ItemStack
+   *
+   * @return The serialized string, null if not cached.
+   */
+  @Nullable
+  public String getSerialized(@NotNull final ItemStack stack) {
+
+    return serializeCache.getIfPresent(stack);
+  }
+
+  /**
+   * Caches the serialized string of given ItemStack.
+   *
+   * @param stack      The ItemStack, a copy will be used as the key
+   * @param serialized The serialized string
+   */
+  public void putSerialized(@NotNull final ItemStack stack, @NotNull final String serialized) {
+
+    serializeCache.put(intern(stack.clone()), serialized);
+  }
+
+  /**
+   * Gets the shared prototype that equals to given ItemStack, the given ItemStack will become the
+   * prototype if there is no equal one yet, so it must not be modified after interned.
+   *
+   * @param stack The ItemStack that no one will modify anymore
+   *
+   * @return The shared prototype, DO NOT modify it.
+   */
+  @NotNull
+  public ItemStack intern(@NotNull final ItemStack stack) {
+
+    return prototypes.intern(stack);
+  }
+
+  public void invalidateAll() {
+
+    deserializeCache.invalidateAll();
+    serializeCache.invalidateAll();
+  }
+
+  @NotNull
+  public CacheStats getDeserializeStats() {
+
+    return deserializeCache.stats();
+  }
+
+  @NotNull
+  public CacheStats getSerializeStats() {
+
+    return serializeCache.stats();
+  }
+}
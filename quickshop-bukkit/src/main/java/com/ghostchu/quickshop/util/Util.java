@@ -11,6 +11,7 @@ import com.ghostchu.quickshop.common.util.CommonUtil;
 import com.ghostchu.quickshop.common.util.RomanNumber;
 import com.ghostchu.quickshop.shop.display.AbstractDisplayItem;
 import com.ghostchu.quickshop.util.logger.Log;
+import com.ghostchu.quickshop.util.matcher.item.QuickShopItemMatcherImpl;
 import io.papermc.lib.PaperLib;
 import lombok.Getter;
 import lombok.Setter;
@@ -64,6 +65,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -73,6 +75,7 @@ public class Util {
   private static final EnumSet<Material> SHOPABLES = EnumSet.noneOf(Material.class);
   private static final List<BlockFace> VERTICAL_FACING = List.of(BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST);
   private static int BYPASSED_CUSTOM_STACKSIZE = -1;
+  private static final ItemStackCache ITEM_STACK_CACHE = new ItemStackCache(PackageUtil.parsePackageProperly("itemStackCacheSize").asInteger(4096));
   private static Yaml yaml = null;
   private static Boolean devMode = null;
   @Setter
@@ -185,17 +188,17 @@ public class Util {
     if(inv == null) {
       return 0;
     }
-    final ItemMatcher matcher = plugin.getItemMatcher();
+    final Predicate<ItemStack> matcher = compileMatcher(item);
     if(inv instanceof CountableInventoryWrapper ciw) {
 
-      return ciw.countItem(input->matcher.matches(item, input));
+      return ciw.countItem(matcher::test);
     } else {
       int items = 0;
       for(final ItemStack iStack : inv) {
         if(iStack == null || iStack.getType() == Material.AIR) {
           continue;
         }
-        if(matcher.matches(item, iStack)) {
+        if(matcher.test(iStack)) {
           items += iStack.getAmount();
         }
       }
@@ -233,6 +236,23 @@ public class Util {
     }
   }
 
+  /**
+   * Compiles the prototype once for the loops, if the item matcher supports it.
+   *
+   * @param item The item prototype
+   *
+   * @return The predicate that tests if the given item matches the prototype
+   */
+  @NotNull
+  private static Predicate<ItemStack> compileMatcher(@NotNull final ItemStack item) {
+
+    final ItemMatcher matcher = plugin.getItemMatcher();
+    if(matcher instanceof final QuickShopItemMatcherImpl quickShopItemMatcher) {
+      return quickShopItemMatcher.compile(item)::test;
+    }
+    return input->matcher.matches(item, input);
+  }
+
   /**
    * Returns the number of shop items that can be given to the inventory safely.
    *
@@ -290,16 +310,16 @@ public class Util {
     if(inv == null) {
       return 0;
     }
-    final ItemMatcher matcher = plugin.getItemMatcher();
+    final Predicate<ItemStack> matcher = compileMatcher(item);
     if(inv instanceof CountableInventoryWrapper ciw) {
-      return ciw.countSpace(input->matcher.matches(item, input));
+      return ciw.countSpace(matcher::test);
     } else {
       int space = 0;
       final int itemMaxStackSize = getItemMaxStackSize(item.getType());
       for(final ItemStack iStack : inv) {
         if(iStack == null || iStack.getType() == Material.AIR) {
           space += itemMaxStackSize;
-        } else if(matcher.matches(item, iStack)) {
+        } else if(matcher.test(iStack)) {
           space += iStack.getAmount() >= itemMaxStackSize? 0 : itemMaxStackSize - iStack.getAmount();
         }
       }
@@ -331,7 +351,36 @@ public class Util {
    * @throws InvalidConfigurationException when failed deserialize config
    */
   @Nullable
-  public static ItemStack deserialize(@NotNull String config) throws InvalidConfigurationException {
+  public static ItemStack deserialize(@NotNull final String config) throws InvalidConfigurationException {
+
+    final ItemStack prototype = deserializeShared(config);
+    return prototype == null? null : prototype.clone();
+  }
+
+  /**
+   * Covert YAML string to ItemStack, the returned ItemStack is a prototype shared with other callers
+   * that deserialized the same string.
+   *
+   * @param config serialized ItemStack
+   *
+   * @return The shared prototype, DO NOT modify it, clone it before modify.
+   *
+   * @throws InvalidConfigurationException when failed deserialize config
+   */
+  @Nullable
+  @ApiStatus.Internal
+  public static ItemStack deserializeShared(@NotNull final String config) throws InvalidConfigurationException {
+
+    final ItemStack cached = ITEM_STACK_CACHE.getDeserialized(config);
+    if(cached != null) {
+      return cached;
+    }
+    final ItemStack stack = deserialize0(config);
+    return stack == null? null : ITEM_STACK_CACHE.putDeserialized(config, stack);
+  }
+
+  @Nullable
+  private static ItemStack deserialize0(@NotNull String config) throws InvalidConfigurationException {
 
     if(yaml == null) {
       final DumperOptions yamlOptions = new DumperOptions();
@@ -837,6 +886,8 @@ public class Util {
     }
     SHOPABLES.clear();
     CUSTOM_STACKSIZE.clear();
+    // Deserialize result depends on the force-load-downgrade-items settings
+    ITEM_STACK_CACHE.invalidateAll();
     devMode = plugin.getConfig().getBoolean("dev-mode");
 
     for(final String s : plugin.getConfig().getStringList("shop-blocks")) {
@@ -1165,9 +1216,27 @@ public class Util {
   @NotNull
   public static String serialize(@NotNull final ItemStack iStack) {
 
+    final String cached = ITEM_STACK_CACHE.getSerialized(iStack);
+    if(cached != null) {
+      return cached;
+    }
     final YamlConfiguration cfg = new YamlConfiguration();
     cfg.set("item", iStack);
-    return cfg.saveToString();
+    final String serialized = cfg.saveToString();
+    ITEM_STACK_CACHE.putSerialized(iStack, serialized);
+    return serialized;
+  }
+
+  /**
+   * Gets the cache of ItemStack serialization and deserialization.
+   *
+   * @return The cache
+   */
+  @NotNull
+  @ApiStatus.Internal
+  public static ItemStackCache getItemStackCache() {
+
+    return ITEM_STACK_CACHE;
   }
 
   /**
@@ -23,6 +23,54 @@ public class ConfigUpdateScript {
     this.plugin = plugin;
   }
 
+  @UpdateScript(version = 1037)
+  public void priceSuggestionOnCreate() {
+
+    getConfig().set("shop.price-suggestion-on-create", true);
+  }
+
+  @UpdateScript(version = 1036)
+  public void configWorldLoadingWhitelist() {
+
+    getConfig().set("database-loading-whitelist-worlds", Collections.emptyList());
+  }
+
+  @UpdateScript(version = 1035)
+  public void ongoingFeeSettlementMode() {
+
+    getConfig().set("shop.ongoing-fee.settlement-mode", "PER_SHOP");
+  }
+
+  @UpdateScript(version = 1034)
+  public void signUpdateTickBudget() {
+
+    getConfig().set("shop.sign-update.tick-budget-ms", 5);
+  }
+
+  @UpdateScript(version = 1033)
+  public void inventoryCountCache() {
+
+    getConfig().set("shop.inventory-count-cache.enable", true);
+    getConfig().set("shop.inventory-count-cache.max-age-seconds", 30);
+  }
+
+  @UpdateScript(version = 1032)
+  public void databaseLogWriter() {
+
+    getConfig().set("database.log-writer.buffer-size", 4096);
+    getConfig().set("database.log-writer.batch-size", 256);
+    getConfig().set("database.log-writer.flush-interval-ms", 1000);
+    getConfig().set("database.log-writer.overflow-policy", "SPILL");
+  }
+
+  @UpdateScript(version = 1031)
+  public void databaseWriteBehind() {
+
+    getConfig().set("database.write-behind.enable", true);
+    getConfig().set("database.write-behind.batch-size", 100);
+    getConfig().set("database.write-behind.flush-latency-ms", 50);
+  }
+
   @UpdateScript(version = 1029)
   public void configWorldLoadingBlacklist() {
 
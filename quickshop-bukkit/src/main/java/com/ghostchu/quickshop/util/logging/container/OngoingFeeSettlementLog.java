@@ -0,0 +1,37 @@
+package com.ghostchu.quickshop.util.logging.container;
+
+import com.ghostchu.quickshop.api.obj.QUser;
+import lombok.Data;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class OngoingFeeSettlementLog {
+
+  private static int v = 1;
+  private boolean success;
+  private String owner;
+  private String taxAccount;
+  private String world;
+  private String currency;
+  private double amount;
+  // <Shop id, Cost>
+  private Map<Long, Double> breakdown;
+  private List<Long> removedShops;
+  private String lastError;
+
+  public OngoingFeeSettlementLog(final boolean success, final QUser owner, @Nullable final QUser taxAccount, final String world, final String currency, final double amount, final Map<Long, Double> breakdown, final List<Long> removedShops, @Nullable final String lastError) {
+
+    this.success = success;
+    this.owner = owner.serialize();
+    this.taxAccount = taxAccount == null? null : taxAccount.serialize();
+    this.world = world;
+    this.currency = currency;
+    this.amount = amount;
+    this.breakdown = breakdown;
+    this.removedShops = removedShops;
+    this.lastError = lastError;
+  }
+}
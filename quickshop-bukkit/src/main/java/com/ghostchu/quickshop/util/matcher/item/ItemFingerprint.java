@@ -0,0 +1,80 @@
+package com.ghostchu.quickshop.util.matcher.item;
+
+import com.ghostchu.quickshop.QuickShop;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The pre-computed matching data of a prototype ItemStack (e.g. the shop item), so comparing it with
+ * other stacks doesn't need to clone the prototype or read its meta again.
+ * <p>
+ * The fingerprint is a snapshot, create a new one if the prototype changed.
+ */
+public final class ItemFingerprint {
+
+  private final Material type;
+  private final boolean hasItemMeta;
+  @Nullable
+  private final ItemMeta itemMeta;
+  private final int metaHash;
+  @Nullable
+  private final String shopId;
+
+  private ItemFingerprint(@NotNull final ItemStack prototype) {
+
+    this.type = prototype.getType();
+    this.hasItemMeta = prototype.hasItemMeta();
+    this.itemMeta = hasItemMeta? prototype.getItemMeta() : null;
+    this.metaHash = itemMeta == null? 0 : itemMeta.hashCode();
+    this.shopId = QuickShop.getInstance().getPlatform().getItemShopId(prototype);
+  }
+
+  /**
+   * Creates the fingerprint of given prototype.
+   *
+   * @param prototype The prototype, the amount doesn't matter
+   *
+   * @return The fingerprint
+   */
+  @NotNull
+  public static ItemFingerprint of(@NotNull final ItemStack prototype) {
+
+    return new ItemFingerprint(prototype);
+  }
+
+  @NotNull
+  public Material getType() {
+
+    return type;
+  }
+
+  public boolean hasItemMeta() {
+
+    return hasItemMeta;
+  }
+
+  /**
+   * Gets the cached meta of the prototype, DO NOT modify it.
+   *
+   * @return The cached meta, null if prototype doesn't have meta
+   */
+  @Nullable
+  public ItemMeta getItemMeta() {
+
+    return itemMeta;
+  }
+
+  public int getMetaHash() {
+
+    return metaHash;
+  }
+
+  @Nullable
+  public String getShopId() {
+
+    return shopId;
+  }
+}
@@ -0,0 +1,27 @@
+package com.ghostchu.quickshop.util.matcher.item;
+
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A prototype ItemStack compiled by {@link QuickShopItemMatcherImpl#compile(ItemStack)}, only the
+ * checks that apply to the prototype are kept.
+ */
+public interface ItemPredicate {
+
+  /**
+   * Tests the given ItemStack matches the compiled prototype. Amounts are ignored.
+   *
+   * @param stack The ItemStack to test
+   *
+   * @return The result of tests
+   */
+  boolean test(@Nullable ItemStack stack);
+
+  /**
+   * Checks if this predicate was compiled with outdated matcher settings and need to compile again.
+   *
+   * @return true if stale
+   */
+  boolean isStale();
+}
@@ -7,6 +7,7 @@ import com.ghostchu.quickshop.util.logger.Log;
 import com.ghostchu.simplereloadlib.ReloadResult;
 import com.ghostchu.simplereloadlib.ReloadStatus;
 import com.ghostchu.simplereloadlib.Reloadable;
+import net.kyori.adventure.text.Component;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.attribute.Attribute;
 import org.bukkit.block.ShulkerBox;
@@ -50,6 +51,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
 
   private int workType;
 
+  private volatile int generation;
 
   public QuickShopItemMatcherImpl(@NotNull final QuickShop plugin) {
 
@@ -62,6 +64,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
 
     itemMetaMatcher = new ItemMetaMatcher(plugin.getConfig().getConfigurationSection("matcher.item"), this);
     workType = plugin.getConfig().getInt("matcher.work-type");
+    generation++;
   }
 
   public QuickShopItemMatcherImpl(final QuickShop plugin, final ItemMetaMatcher itemMetaMatcher, final int workType) {
@@ -142,61 +145,128 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
    * @return true if the itemstacks match. (Material, durability, enchants, name)
    */
   @Override
-  public boolean matches(@Nullable ItemStack requireStack, @Nullable ItemStack givenStack) {
+  public boolean matches(@Nullable final ItemStack requireStack, @Nullable final ItemStack givenStack) {
 
     if(requireStack == null && givenStack == null) {
       return true;
     }
 
     if(requireStack == null || givenStack == null) {
-      Log.debug(
-              "Match failed: A stack is null: "
-              + "requireStack["
-              + requireStack
-              + "] givenStack["
-              + givenStack
-              + "]");
       return false; // One of them is null (Can't be both, see above)
     }
-
+    // Ad-hoc comparing, the fingerprint is only worth to build when it cached (see #compile)
+    final boolean sameType = requireStack.getType() == givenStack.getType();
+    if(sameType && !requireStack.hasItemMeta() && !givenStack.hasItemMeta()) {
+      // Plain items of same type, the shop id lives in the meta
+      return true;
+    }
     final String shopIdOrigin = plugin.getPlatform().getItemShopId(requireStack);
-    if(shopIdOrigin != null) {
-      Log.debug("ShopId compare -> Origin: " + shopIdOrigin + "  Given: " + plugin.getPlatform().getItemShopId(givenStack));
-      final String shopIdTester = plugin.getPlatform().getItemShopId(givenStack);
-      if(shopIdOrigin.equals(shopIdTester)) {
-        return true;
-      }
+    if(shopIdOrigin != null && shopIdOrigin.equals(plugin.getPlatform().getItemShopId(givenStack))) {
+      return true;
     }
-
-    requireStack = requireStack.clone();
-    requireStack.setAmount(1);
-    givenStack = givenStack.clone();
-    givenStack.setAmount(1);
-    if(workType == 1) {
-      return requireStack.isSimilar(givenStack);
+    if(!sameType) {
+      // Only the items with same shop id can match across the types
+      return false;
     }
-    if(workType == 2) {
-      return requireStack.equals(givenStack);
+    if(!requireStack.hasItemMeta()) {
+      // Plain item, only another plain item is similar to it
+      return !givenStack.hasItemMeta();
     }
-
-    if(!typeMatches(requireStack, givenStack)) {
+    if(!givenStack.hasItemMeta()) {
       return false;
     }
-
     if(requireStack.isSimilar(givenStack)) {
       return true;
     }
-
-    if(requireStack.hasItemMeta() && givenStack.hasItemMeta()) {
-      return itemMetaMatcher.matches(requireStack, givenStack);
+    if(workType == 1 || workType == 2) {
+      return false;
+    }
+    final ItemMeta requireMeta = requireStack.getItemMeta();
+    final ItemMeta givenMeta = givenStack.getItemMeta();
+    if(requireMeta == null || givenMeta == null) {
+      return requireMeta == givenMeta;
     }
+    return itemMetaMatcher.matches(requireMeta, givenMeta);
+  }
+
+  /**
+   * Tests the given ItemStack matches the prototype of the fingerprint. Amounts are ignored.
+   * <p>
+   * The ItemStacks are never cloned, cheap checks (type, meta presence, meta hash) goes first and
+   * the given stack's meta will be read at most once, the sub-matchers only run when the meta not
+   * exactly same.
+   *
+   * @param required   The fingerprint of the original ItemStack
+   * @param givenStack The ItemStack will test matches with original itemstack.
+   *
+   * @return The result of tests
+   */
+  public boolean matches(@NotNull final ItemFingerprint required, @Nullable final ItemStack givenStack) {
 
-    return !requireStack.hasItemMeta() && !givenStack.hasItemMeta();
+    return matches(required, givenStack, workType, null);
   }
 
-  private boolean typeMatches(final ItemStack requireStack, final ItemStack givenStack) {
+  /**
+   * Compiles the prototype into a predicate, the sub-matchers that can't fail for this prototype
+   * are skipped and the prototype side values are only read once.
+   * <p>
+   * The predicate becomes stale once the matcher reloaded.
+   *
+   * @param prototype The original ItemStack
+   *
+   * @return The compiled predicate
+   */
+  @NotNull
+  public ItemPredicate compile(@NotNull final ItemStack prototype) {
+
+    final ItemFingerprint fingerprint = ItemFingerprint.of(prototype);
+    final int compiledWorkType = workType;
+    final ItemMeta meta = fingerprint.getItemMeta();
+    final ItemMetaMatcher.MetaPredicate[] metaPredicates = meta == null || compiledWorkType != 0? new ItemMetaMatcher.MetaPredicate[0] : itemMetaMatcher.compile(meta);
+    return new CompiledItemPredicate(this, generation, fingerprint, compiledWorkType, metaPredicates);
+  }
 
-    return requireStack.getType().equals(givenStack.getType());
+  private boolean matches(@NotNull final ItemFingerprint required, @Nullable final ItemStack givenStack, final int workType, @Nullable final ItemMetaMatcher.MetaPredicate[] compiled) {
+
+    if(givenStack == null) {
+      return false;
+    }
+    final String shopIdOrigin = required.getShopId();
+    if(required.getType() != givenStack.getType()) {
+      // Only the items with same shop id can match across the types
+      return shopIdOrigin != null && shopIdOrigin.equals(plugin.getPlatform().getItemShopId(givenStack));
+    }
+    if(shopIdOrigin != null && shopIdOrigin.equals(plugin.getPlatform().getItemShopId(givenStack))) {
+      return true;
+    }
+    if(!required.hasItemMeta()) {
+      // Plain item, only another plain item is similar to it
+      return !givenStack.hasItemMeta();
+    }
+    if(!givenStack.hasItemMeta()) {
+      return false;
+    }
+    final ItemMeta givenMeta = givenStack.getItemMeta();
+    final ItemMeta requireMeta = required.getItemMeta();
+    if(givenMeta == null || requireMeta == null) {
+      return givenMeta == requireMeta;
+    }
+    // Same as ItemStack#isSimilar, since type and meta presence already checked
+    if(givenMeta.hashCode() == required.getMetaHash() && requireMeta.equals(givenMeta)) {
+      return true;
+    }
+    if(workType == 1 || workType == 2) {
+      return false;
+    }
+    if(compiled == null) {
+      return itemMetaMatcher.matches(requireMeta, givenMeta);
+    }
+    for(final ItemMetaMatcher.MetaPredicate predicate : compiled) {
+      if(!predicate.test(givenMeta)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -211,14 +281,45 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
     return ReloadResult.builder().status(ReloadStatus.SUCCESS).build();
   }
 
+  private static class CompiledItemPredicate implements ItemPredicate {
+
+    private final QuickShopItemMatcherImpl owner;
+    private final int generation;
+    private final ItemFingerprint fingerprint;
+    private final int workType;
+    private final ItemMetaMatcher.MetaPredicate[] metaPredicates;
+
+    private CompiledItemPredicate(@NotNull final QuickShopItemMatcherImpl owner, final int generation, @NotNull final ItemFingerprint fingerprint, final int workType, @NotNull final ItemMetaMatcher.MetaPredicate[] metaPredicates) {
+
+      this.owner = owner;
+      this.generation = generation;
+      this.fingerprint = fingerprint;
+      this.workType = workType;
+      this.metaPredicates = metaPredicates;
+    }
+
+    @Override
+    public boolean test(@Nullable final ItemStack stack) {
+
+      return owner.matches(fingerprint, stack, workType, metaPredicates);
+    }
+
+    @Override
+    public boolean isStale() {
+
+      return owner.generation != generation || owner.plugin.getItemMatcher() != owner;
+    }
+  }
+
   private static class ItemMetaMatcher {
 
     private final List<Matcher> matcherList = new ArrayList<>();
+    private final List<MatcherCompiler> compilerList = new ArrayList<>();
 
     public ItemMetaMatcher(@NotNull final ConfigurationSection itemMatcherConfig, @NotNull final QuickShopItemMatcherImpl itemMatcher) {
 
       final QuickShop plugin = QuickShop.getInstance();
-      addIfEnable(itemMatcherConfig, "damage", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "damage", Damageable.class, (meta1, meta2)->{
         if(meta1 instanceof Damageable != meta2 instanceof Damageable) {
           return false;
         }
@@ -237,7 +338,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "repaircost", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "repaircost", Repairable.class, (meta1, meta2)->{
         if(meta1 instanceof Repairable != meta2 instanceof Repairable) {
           return false;
         }
@@ -258,9 +359,15 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "displayname", ((meta1, meta2)->Objects.equals(plugin.getPlatform().getDisplayName(meta1), plugin.getPlatform().getDisplayName(meta2))));
+      addIfEnable(itemMatcherConfig, "displayname", ((meta1, meta2)->Objects.equals(plugin.getPlatform().getDisplayName(meta1), plugin.getPlatform().getDisplayName(meta2))), prototype->{
+        final Component displayName = plugin.getPlatform().getDisplayName(prototype);
+        return given->Objects.equals(displayName, plugin.getPlatform().getDisplayName(given));
+      });
       // We didn't touch the loresMatches because many plugin use this check item.
-      addIfEnable(itemMatcherConfig, "lores", ((meta1, meta2)->Objects.equals(plugin.getPlatform().getLore(meta1), plugin.getPlatform().getLore(meta2))));
+      addIfEnable(itemMatcherConfig, "lores", ((meta1, meta2)->Objects.equals(plugin.getPlatform().getLore(meta1), plugin.getPlatform().getLore(meta2))), prototype->{
+        final List<Component> lore = plugin.getPlatform().getLore(prototype);
+        return given->Objects.equals(lore, plugin.getPlatform().getLore(given));
+      });
       addIfEnable(itemMatcherConfig, "enchs", ((meta1, meta2)->{
         if(meta1.hasEnchants() != meta2.hasEnchants()) {
           return false;
@@ -279,8 +386,19 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
           return CommonUtil.listDisorderMatches(stor1.entrySet(), stor2.entrySet());
         }
         return true;
-      }));
-      addIfEnable(itemMatcherConfig, "potions", ((meta1, meta2)->{
+      }), prototype->{
+        if(prototype.hasEnchants()) {
+          final Set<Map.Entry<Enchantment, Integer>> enchants = prototype.getEnchants().entrySet();
+          return given->given.hasEnchants() && CommonUtil.listDisorderMatches(enchants, given.getEnchants().entrySet());
+        }
+        if(prototype instanceof final EnchantmentStorageMeta storageMeta) {
+          // Same material so the given meta is EnchantmentStorageMeta too
+          final Set<Map.Entry<Enchantment, Integer>> stored = storageMeta.getStoredEnchants().entrySet();
+          return given->!given.hasEnchants() && CommonUtil.listDisorderMatches(stored, ((EnchantmentStorageMeta)given).getStoredEnchants().entrySet());
+        }
+        return given->!given.hasEnchants();
+      });
+      addIfEnable(itemMatcherConfig, "potions", PotionMeta.class, ((meta1, meta2)->{
         if(meta1 instanceof PotionMeta != meta2 instanceof PotionMeta) {
           return false;
         }
@@ -333,7 +451,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       }));
-      addIfEnable(itemMatcherConfig, "attributes", (meta1, meta2)->{
+      final Matcher attributesMatcher = (meta1, meta2)->{
         if(meta1.hasAttributeModifiers() != meta2.hasAttributeModifiers()) {
           return false;
         }
@@ -349,9 +467,18 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
           }
         }
         return true;
+      };
+      addIfEnable(itemMatcherConfig, "attributes", attributesMatcher, prototype->{
+        if(prototype.hasAttributeModifiers()) {
+          return given->attributesMatcher.match(prototype, given);
+        }
+        return given->!given.hasAttributeModifiers();
+      });
+      addIfEnable(itemMatcherConfig, "itemflags", ((meta1, meta2)->Arrays.deepEquals(meta1.getItemFlags().toArray(), meta2.getItemFlags().toArray())), prototype->{
+        final Object[] flags = prototype.getItemFlags().toArray();
+        return given->Arrays.deepEquals(flags, given.getItemFlags().toArray());
       });
-      addIfEnable(itemMatcherConfig, "itemflags", ((meta1, meta2)->Arrays.deepEquals(meta1.getItemFlags().toArray(), meta2.getItemFlags().toArray())));
-      addIfEnable(itemMatcherConfig, "books", ((meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "books", BookMeta.class, ((meta1, meta2)->{
         if(meta1 instanceof BookMeta != meta2 instanceof BookMeta) {
           return false;
         }
@@ -382,7 +509,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       }));
-      addIfEnable(itemMatcherConfig, "banner", ((meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "banner", BannerMeta.class, ((meta1, meta2)->{
         if(meta1 instanceof BannerMeta != meta2 instanceof BannerMeta) {
           return false;
         }
@@ -395,7 +522,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       }));
-      addIfEnable(itemMatcherConfig, "skull", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "skull", SkullMeta.class, (meta1, meta2)->{
         if(meta1 instanceof SkullMeta != meta2 instanceof SkullMeta) {
           return false;
         }
@@ -408,7 +535,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "bundle", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "bundle", BundleMeta.class, (meta1, meta2)->{
         if(meta1 instanceof BundleMeta != meta2 instanceof BundleMeta) {
           return false;
         }
@@ -425,7 +552,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "map", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "map", MapMeta.class, (meta1, meta2)->{
         if(meta1 instanceof MapMeta != meta2 instanceof MapMeta) {
           return false;
         }
@@ -450,7 +577,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "firework", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "firework", FireworkMeta.class, (meta1, meta2)->{
         if((meta1 instanceof FireworkMeta) != (meta2 instanceof FireworkMeta)) {
           return false;
         }
@@ -466,7 +593,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "leatherArmor", ((meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "leatherArmor", LeatherArmorMeta.class, ((meta1, meta2)->{
         if((meta1 instanceof LeatherArmorMeta) != (meta2 instanceof LeatherArmorMeta)) {
           return false;
         }
@@ -475,7 +602,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       }));
-      addIfEnable(itemMatcherConfig, "fishBucket", (meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "fishBucket", TropicalFishBucketMeta.class, (meta1, meta2)->{
         if((meta1 instanceof TropicalFishBucketMeta) != (meta2 instanceof TropicalFishBucketMeta)) {
           return false;
         }
@@ -491,7 +618,7 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
         }
         return true;
       });
-      addIfEnable(itemMatcherConfig, "shulkerBox", ((meta1, meta2)->{
+      addIfEnable(itemMatcherConfig, "shulkerBox", BlockStateMeta.class, ((meta1, meta2)->{
         //https://www.spigotmc.org/threads/getting-the-inventory-of-a-shulker-box-itemstack.212369
         if((meta1 instanceof BlockStateMeta) != (meta2 instanceof BlockStateMeta)) {
           return false;
@@ -514,8 +641,14 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
           return meta1.getCustomModelData() == meta2.getCustomModelData();
         }
         return true;
-      }));
-      addIfEnable(itemMatcherConfig, "suspiciousStew", ((meta1, meta2)->{
+      }), prototype->{
+        if(prototype.hasCustomModelData()) {
+          final int customModelData = prototype.getCustomModelData();
+          return given->given.hasCustomModelData() && given.getCustomModelData() == customModelData;
+        }
+        return given->!given.hasCustomModelData();
+      });
+      addIfEnable(itemMatcherConfig, "suspiciousStew", SuspiciousStewMeta.class, ((meta1, meta2)->{
         if((meta1 instanceof SuspiciousStewMeta) != (meta2 instanceof SuspiciousStewMeta)) {
           return false;
         }
@@ -534,29 +667,48 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
 
     private void addIfEnable(final ConfigurationSection itemMatcherConfig, final String path, final Matcher matcher) {
 
+      addIfEnable(itemMatcherConfig, path, matcher, prototype->given->matcher.match(prototype, given));
+    }
+
+    /**
+     * Adds a matcher that only checks the metas of given type, the items with same material always
+     * have the same meta type, so the matcher is skipped when compiling other prototypes.
+     */
+    private void addIfEnable(final ConfigurationSection itemMatcherConfig, final String path, final Class<? extends ItemMeta> metaType, final Matcher matcher) {
+
+      addIfEnable(itemMatcherConfig, path, matcher, prototype->metaType.isInstance(prototype)? given->matcher.match(prototype, given) : null);
+    }
+
+    private void addIfEnable(final ConfigurationSection itemMatcherConfig, final String path, final Matcher matcher, final MatcherCompiler compiler) {
+
       if(itemMatcherConfig.getBoolean(path)) {
         matcherList.add(matcher);
+        compilerList.add(compiler);
       }
     }
 
-    boolean matches(final ItemStack requireStack, final ItemStack givenStack) {
+    @NotNull
+    MetaPredicate[] compile(@NotNull final ItemMeta prototype) {
 
-      if(!requireStack.hasItemMeta()) {
-        return true; // Passed check. no meta need to check.
+      final List<MetaPredicate> predicates = new ArrayList<>(compilerList.size());
+      for(final MatcherCompiler compiler : compilerList) {
+        final MetaPredicate predicate = compiler.compile(prototype);
+        if(predicate != null) {
+          predicates.add(predicate);
+        }
       }
-      final ItemMeta meta1 = requireStack.getItemMeta();
-      final ItemMeta meta2 = givenStack.getItemMeta();
-      //If givenStack don't have meta, try to generate one
-      if(meta1 != null && meta2 != null) {
-        for(final Matcher matcher : matcherList) {
-          final boolean result = matcher.match(meta1, meta2);
-          if(!result) {
-            return false;
-          }
+      return predicates.toArray(new MetaPredicate[0]);
+    }
+
+    boolean matches(@NotNull final ItemMeta meta1, @NotNull final ItemMeta meta2) {
+
+      for(final Matcher matcher : matcherList) {
+        final boolean result = matcher.match(meta1, meta2);
+        if(!result) {
+          return false;
         }
-        return true;
       }
-      return meta1 == null && meta2 == null;
+      return true;
     }
 
     private boolean rootMatches(final ItemMeta meta1, final ItemMeta meta2) {
@@ -577,5 +729,30 @@ public class QuickShopItemMatcherImpl implements ItemMatcher, Reloadable {
       boolean match(ItemMeta meta1, ItemMeta meta2);
     }
 
+    interface MetaPredicate {
+
+      /**
+       * Matches the given ItemMeta with the compiled prototype
+       *
+       * @param given The given ItemMeta
+       *
+       * @return is same
+       */
+      boolean test(ItemMeta given);
+    }
+
+    interface MatcherCompiler {
+
+      /**
+       * Compiles the matcher for the prototype
+       *
+       * @param prototype The ItemMeta of prototype
+       *
+       * @return The predicate, or null if this matcher can't fail for the prototype
+       */
+      @Nullable
+      MetaPredicate compile(ItemMeta prototype);
+    }
+
   }
 }
\ No newline at end of file
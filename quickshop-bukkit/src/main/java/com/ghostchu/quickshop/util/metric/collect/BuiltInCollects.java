@@ -131,7 +131,7 @@ public class BuiltInCollects {//Statistic
   @MetricCollectEntry(dataType = MetricDataType.RESEARCH, moduleName = "Statistic - All shops hosting across all servers", description = "How many shops we can power across all servers? This research will used for performance tweak for components like shop managing/looking up/caching size etc.")
   public CustomChart statisticAllShops() {
 
-    return new SingleLineChart("statistic_all_shops_hosting_across_all_servers", ()->plugin.getShopManager().getAllShops().size());
+    return new SingleLineChart("statistic_all_shops_hosting_across_all_servers", ()->(int)plugin.getShopManager().streamShops(false).count());
   }
 
   @MetricCollectEntry(dataType = MetricDataType.STATISTIC, moduleName = "Statistic - Background Debug Logger", description = "We collect this so we can know the which one item display impl most using, and improve it.")
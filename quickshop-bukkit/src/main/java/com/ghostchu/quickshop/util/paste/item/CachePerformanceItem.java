@@ -2,6 +2,7 @@ package com.ghostchu.quickshop.util.paste.item;
 
 import com.ghostchu.quickshop.QuickShop;
 import com.ghostchu.quickshop.util.FastPlayerFinder;
+import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.paste.GuavaCacheRender;
 import com.google.common.cache.CacheStats;
 import org.jetbrains.annotations.NotNull;
@@ -16,7 +17,11 @@ public class CachePerformanceItem implements SubPasteItem {
   public @NotNull String genBody() {
 
     return "<h5>Player Lookup Cache</h5>" +
-           buildPlayerLookupCache();
+           buildPlayerLookupCache() +
+           "<h5>ItemStack Deserialize Cache</h5>" +
+           renderTable(Util.getItemStackCache().getDeserializeStats()) +
+           "<h5>ItemStack Serialize Cache</h5>" +
+           renderTable(Util.getItemStackCache().getSerializeStats());
   }
 
 
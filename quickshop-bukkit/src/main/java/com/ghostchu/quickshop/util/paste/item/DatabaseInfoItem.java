@@ -1,6 +1,9 @@
 package com.ghostchu.quickshop.util.paste.item;
 
 import com.ghostchu.quickshop.QuickShop;
+import com.ghostchu.quickshop.database.PurchaseLogWriter;
+import com.ghostchu.quickshop.database.SimpleDatabaseHelperV2;
+import com.ghostchu.quickshop.database.WriteBehindQueue;
 import com.ghostchu.quickshop.util.PackageUtil;
 import com.ghostchu.quickshop.util.paste.util.HTMLTable;
 import org.jetbrains.annotations.NotNull;
@@ -38,6 +41,18 @@ public class DatabaseInfoItem implements SubPasteItem {
       table.insert("Version", meta.getDatabaseProductVersion());
       table.insert("Driver", meta.getDriverName());
       table.insert("Driver Version", meta.getDriverVersion());
+      if(QuickShop.getInstance().getDatabaseHelper() instanceof final SimpleDatabaseHelperV2 helper) {
+        final WriteBehindQueue queue = helper.getWriteBehindQueue();
+        table.insert("Write-Behind", String.valueOf(queue.isEnabled()));
+        table.insert("Write-Behind Pending", String.valueOf(queue.getPendingWrites()));
+        table.insert("Write-Behind Batches", queue.getFlushedBatches() + " (" + queue.getFlushedRows() + " rows, " + queue.getFallbackBatches() + " fallback)");
+        table.insert("Write-Behind Batch Size", String.format("avg %.2f / max %d", queue.getAverageBatchSize(), queue.getMaxBatchSize()));
+        table.insert("Write-Behind Flush Time", String.format("avg %.2fms / last %.2fms", queue.getAverageFlushMillis(), queue.getLastFlushMillis()));
+        final PurchaseLogWriter logWriter = helper.getPurchaseLogWriter();
+        table.insert("Log Writer Queue", logWriter.getQueueDepth() + " / " + logWriter.getQueueCapacity() + " (" + logWriter.getOverflowPolicy().name() + ")");
+        table.insert("Log Writer Rows", logWriter.getWrittenRows() + " written, " + logWriter.getSpilledRows() + " spilled, " + logWriter.getDroppedRows() + " dropped");
+        table.insert("Log Writer Latency", String.format("flush avg %.2fms / last %.2fms, queued avg %.2fms", logWriter.getAverageFlushMillis(), logWriter.getLastFlushMillis(), logWriter.getAverageQueuedMillis()));
+      }
       if(PackageUtil.parsePackageProperly("generateDatabaseFullReport").asBoolean()) {
         processFullReportGenerate(meta, table);
       }
@@ -17,8 +17,8 @@ public class ShopsInfoItem implements SubPasteItem {
   public ShopsInfoItem() {
 
     final QuickShop plugin = QuickShop.getInstance();
-    this.totalShops = String.valueOf(plugin.getShopManager().getAllShops().size());
-    plugin.getShopManager().getAllShops().stream()
+    this.totalShops = String.valueOf(plugin.getShopManager().streamShops(false).count());
+    plugin.getShopManager().streamShops(false)
             .filter(shop->shop.getLocation().getWorld() != null)
             .forEach(shop->{
               List<Shop> worldShops = shopsMapping.get(shop.getLocation().getWorld().getName());
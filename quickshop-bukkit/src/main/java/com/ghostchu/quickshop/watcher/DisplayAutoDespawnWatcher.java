@@ -15,12 +15,19 @@ import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
 
 public class DisplayAutoDespawnWatcher extends BukkitRunnable implements Reloadable, SubPasteItem {
 
   private final QuickShop plugin;
   private int range;
+  private volatile int lastShopsInRange;
+  private volatile int lastChunksScanned;
+  private volatile long lastRunNanos;
 
   public DisplayAutoDespawnWatcher(@NotNull final QuickShop plugin) {
 
@@ -51,6 +58,8 @@ public class DisplayAutoDespawnWatcher extends BukkitRunnable implements Reloada
   @Override
   public void run() {
 
+    final long startTime = System.nanoTime();
+    final Set<Shop> shopsInRange = collectShopsInRange();
     for(final Shop shop : plugin.getShopManager().getLoadedShops()) {
       //Shop may be deleted or unloaded when iterating
       if(!shop.isLoaded()) {
@@ -59,19 +68,9 @@ public class DisplayAutoDespawnWatcher extends BukkitRunnable implements Reloada
       if(shop.isDisableDisplay()) {
         continue;
       }
-      final Location location = shop.getLocation();
-      final World world = shop.getLocation().getWorld(); //Cache this, because it will took some time.
       final AbstractDisplayItem displayItem = ((ContainerShop)shop).getDisplayItem();
       if(displayItem != null) {
-        // Check the range has player?
-        boolean anyPlayerInRegion = false;
-        for(final Player player : Bukkit.getOnlinePlayers()) {
-          if((player.getWorld() == world) && (player.getLocation().distance(location) <= range)) {
-            anyPlayerInRegion = true;
-            break;
-          }
-        }
-        if(anyPlayerInRegion) {
+        if(shopsInRange.contains(shop)) {
           if(!displayItem.isSpawned()) {
             displayItem.spawn();
           }
@@ -80,6 +79,57 @@ public class DisplayAutoDespawnWatcher extends BukkitRunnable implements Reloada
         }
       }
     }
+    this.lastShopsInRange = shopsInRange.size();
+    this.lastRunNanos = System.nanoTime() - startTime;
+  }
+
+  /**
+   * Collects the shops that have at least one player in range, only the chunks which within the
+   * range of players will be looked up from the shop chunk mapping.
+   *
+   * @return The shops in range, compared by identity
+   */
+  @NotNull
+  private Set<Shop> collectShopsInRange() {
+
+    final Set<Shop> shopsInRange = Collections.newSetFromMap(new IdentityHashMap<>());
+    final double rangeSquared = (double)range * range;
+    // A block within range can be at most ceil(range / 16) chunks away from the player's chunk
+    final int chunkRange = (Math.max(0, range) + 15) >> 4;
+    int chunksScanned = 0;
+    for(final Player player : Bukkit.getOnlinePlayers()) {
+      final Location playerLocation = player.getLocation();
+      final World world = playerLocation.getWorld();
+      if(world == null) {
+        continue;
+      }
+      final String worldName = world.getName();
+      final int centerX = playerLocation.getBlockX() >> 4;
+      final int centerZ = playerLocation.getBlockZ() >> 4;
+      for(int chunkX = centerX - chunkRange; chunkX <= centerX + chunkRange; chunkX++) {
+        for(int chunkZ = centerZ - chunkRange; chunkZ <= centerZ + chunkRange; chunkZ++) {
+          chunksScanned++;
+          final Map<Location, Shop> shopsInChunk = plugin.getShopManager().getShops(worldName, chunkX, chunkZ);
+          if(shopsInChunk == null) {
+            continue;
+          }
+          for(final Shop shop : shopsInChunk.values()) {
+            if(shopsInRange.contains(shop)) {
+              continue;
+            }
+            final Location location = shop.getLocation();
+            final double dx = location.getX() - playerLocation.getX();
+            final double dy = location.getY() - playerLocation.getY();
+            final double dz = location.getZ() - playerLocation.getZ();
+            if(dx * dx + dy * dy + dz * dz <= rangeSquared) {
+              shopsInRange.add(shop);
+            }
+          }
+        }
+      }
+    }
+    this.lastChunksScanned = chunksScanned;
+    return shopsInRange;
   }
 
   @Override
@@ -96,6 +146,7 @@ public class DisplayAutoDespawnWatcher extends BukkitRunnable implements Reloada
     final StringJoiner joiner = new StringJoiner("<br/>");
     joiner.add("<b>Warning: DisplayAutoDespawnWatcher has been enabled, this may cause lag. This feature is not recommended</b>");
     joiner.add("<p>Range: " + range + "</p>");
+    joiner.add("<p>Last run: " + lastShopsInRange + " shops in range, " + lastChunksScanned + " chunks scanned, " + String.format("%.3f", lastRunNanos / 1_000_000d) + "ms</p>");
     return joiner.toString();
   }
 
@@ -4,18 +4,27 @@ import com.ghostchu.quickshop.QuickShop;
 import com.ghostchu.quickshop.api.event.ShopOngoingFeeEvent;
 import com.ghostchu.quickshop.api.obj.QUser;
 import com.ghostchu.quickshop.api.shop.Shop;
+import com.ghostchu.quickshop.common.util.CalculateUtil;
 import com.ghostchu.quickshop.economy.SimpleEconomyTransaction;
 import com.ghostchu.quickshop.shop.SimpleShopManager;
 import com.ghostchu.quickshop.util.MsgUtil;
 import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.WarningSender;
 import com.ghostchu.quickshop.util.logger.Log;
+import com.ghostchu.quickshop.util.logging.container.OngoingFeeSettlementLog;
+import com.ghostchu.quickshop.util.performance.BatchBukkitExecutor;
 import com.tcoded.folialib.wrapper.task.WrappedTask;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -27,6 +36,7 @@ public class OngoingFeeWatcher implements Runnable {
   private final QuickShop plugin;
   private final WarningSender warningSender;
   WrappedTask task = null;
+  private volatile boolean settling = false;
 
   public OngoingFeeWatcher(@NotNull final QuickShop plugin) {
 
@@ -46,13 +56,17 @@ public class OngoingFeeWatcher implements Runnable {
     final boolean allowLoan = plugin.getConfig().getBoolean("shop.allow-economy-loan");
     final boolean ignoreUnlimited = plugin.getConfig().getBoolean("shop.ongoing-fee.ignore-unlimited");
     final double gobalCost = plugin.getConfig().getDouble("shop.ongoing-fee.cost-per-shop");
-    for(final Shop shop : plugin.getShopManager().getAllShops()) {
+    if(getSettlementMode() == SettlementMode.OWNER) {
+      settleByOwner(allowLoan, ignoreUnlimited, gobalCost);
+      return;
+    }
+    plugin.getShopManager().forEachShop(shop->{
       if(!shop.isUnlimited() || !ignoreUnlimited) {
         final QUser shopOwner = shop.getOwner();
         final Location location = shop.getLocation();
         if(!location.isWorldLoaded()) {
           //ignore unloaded world
-          continue;
+          return;
         }
         double cost = gobalCost;
         final World world = location.getWorld();
@@ -70,7 +84,7 @@ public class OngoingFeeWatcher implements Runnable {
 
           final ShopOngoingFeeEvent event = new ShopOngoingFeeEvent(shop, shopOwner, cost);
           if(Util.fireCancellableEvent(event)) {
-            continue;
+            return;
           }
 
           cost = event.getCost();
@@ -96,7 +110,108 @@ public class OngoingFeeWatcher implements Runnable {
           this.removeShop(shop);
         }
       }
+    });
+  }
+
+  @NotNull
+  private SettlementMode getSettlementMode() {
+
+    final String mode = plugin.getConfig().getString("shop.ongoing-fee.settlement-mode", SettlementMode.PER_SHOP.name());
+    try {
+      return SettlementMode.valueOf(mode.toUpperCase(Locale.ROOT));
+    } catch(IllegalArgumentException e) {
+      Log.debug("Unknown ongoing fee settlement mode " + mode + ", fallback to PER_SHOP.");
+      return SettlementMode.PER_SHOP;
+    }
+  }
+
+  @Nullable
+  private QUser getTaxAccount(@NotNull final Shop shop) {
+
+    if(shop.getTaxAccount() != null) {
+      return shop.getTaxAccount();
+    }
+    return ((SimpleShopManager)plugin.getShopManager()).getCacheTaxAccount();
+  }
+
+  /**
+   * Groups the shops by owner, tax account and world, then charges each group with one withdrawal.
+   * The groups are settled on the main thread across the ticks.
+   *
+   * @param allowLoan       Allow the owner balance goes negative
+   * @param ignoreUnlimited Skip the unlimited shops
+   * @param gobalCost       The cost per shop before the event modified
+   */
+  private void settleByOwner(final boolean allowLoan, final boolean ignoreUnlimited, final double gobalCost) {
+
+    if(settling) {
+      Log.debug("The last ongoing fee settlement still running, skipping...");
+      return;
+    }
+    final Map<SettlementKey, List<ShopFee>> settlements = new LinkedHashMap<>();
+    plugin.getShopManager().forEachShop(shop->{
+      if(shop.isUnlimited() && ignoreUnlimited) {
+        return;
+      }
+      final Location location = shop.getLocation();
+      if(!location.isWorldLoaded()) {
+        //ignore unloaded world
+        return;
+      }
+      final ShopOngoingFeeEvent event = new ShopOngoingFeeEvent(shop, shop.getOwner(), gobalCost);
+      if(Util.fireCancellableEvent(event)) {
+        return;
+      }
+      final SettlementKey key = new SettlementKey(shop.getOwner(), getTaxAccount(shop), Objects.requireNonNull(location.getWorld()));
+      settlements.computeIfAbsent(key, k->new ArrayList<>()).add(new ShopFee(shop, event.getCost()));
+    });
+    if(settlements.isEmpty()) {
+      return;
     }
+    Log.debug("Settling ongoing fee for " + settlements.size() + " owners...");
+    settling = true;
+    final BatchBukkitExecutor<Map.Entry<SettlementKey, List<ShopFee>>> executor = new BatchBukkitExecutor<>();
+    executor.addTasks(settlements.entrySet());
+    executor.startHandle(plugin.getJavaPlugin(), entry->settle(entry.getKey(), entry.getValue(), allowLoan))
+            .whenComplete((result, throwable)->settling = false);
+  }
+
+  private void settle(@NotNull final SettlementKey key, @NotNull final List<ShopFee> fees, final boolean allowLoan) {
+
+    final String currency = plugin.getCurrency();
+    //We must check balance manually to avoid shop missing hell when tax account broken
+    final double balance = allowLoan? Double.MAX_VALUE : plugin.getEconomy().getBalance(key.owner(), key.world(), currency);
+    double total = 0;
+    final Map<Long, Double> breakdown = new LinkedHashMap<>();
+    final List<Shop> unpaid = new ArrayList<>();
+    for(final ShopFee fee : fees) {
+      final double newTotal = CalculateUtil.add(total, fee.cost());
+      if(newTotal <= balance) {
+        total = newTotal;
+        breakdown.put(fee.shop().getShopId(), fee.cost());
+      } else {
+        unpaid.add(fee.shop());
+      }
+    }
+    boolean success = true;
+    String lastError = null;
+    if(!breakdown.isEmpty()) {
+      final SimpleEconomyTransaction transaction = SimpleEconomyTransaction.builder()
+              .allowLoan(allowLoan)
+              .currency(currency)
+              .core(plugin.getEconomy())
+              .world(key.world())
+              .amount(total)
+              .to(key.taxAccount())
+              .from(key.owner()).build();
+      success = transaction.failSafeCommit();
+      if(!success) {
+        lastError = transaction.getLastError();
+        warningSender.sendWarn("Unable to deposit ongoing fee to tax account, the last error is " + lastError);
+      }
+    }
+    plugin.logEvent(new OngoingFeeSettlementLog(success, key.owner(), key.taxAccount(), key.world().getName(), currency, total, breakdown, unpaid.stream().map(Shop::getShopId).toList(), lastError));
+    unpaid.forEach(this::removeShop);
   }
 
   public void start(final int i, final int i2) {
@@ -132,4 +247,23 @@ public class OngoingFeeWatcher implements Runnable {
                                                                                                                                                  + " Z:"
                                                                                                                                                  + shop.getLocation().getBlockZ())).forLocale());
   }
+
+  private enum SettlementMode {
+    /**
+     * Charges every shop with its own transaction.
+     */
+    PER_SHOP,
+    /**
+     * Charges the shops of same owner, tax account and world with one transaction.
+     */
+    OWNER
+  }
+
+  private record SettlementKey(@NotNull QUser owner, @Nullable QUser taxAccount, @NotNull World world) {
+
+  }
+
+  private record ShopFee(@NotNull Shop shop, double cost) {
+
+  }
 }
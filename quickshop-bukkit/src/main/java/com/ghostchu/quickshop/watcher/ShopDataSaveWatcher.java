@@ -1,7 +1,6 @@
 package com.ghostchu.quickshop.watcher;
 
 import com.ghostchu.quickshop.QuickShop;
-import com.ghostchu.quickshop.api.shop.Shop;
 import com.ghostchu.quickshop.common.util.QuickExecutor;
 import com.ghostchu.quickshop.util.logger.Log;
 import com.tcoded.folialib.wrapper.task.WrappedTask;
@@ -27,13 +26,10 @@ public class ShopDataSaveWatcher implements Runnable {
       Log.debug("Another save task still running!");
       return;
     }
-    final CompletableFuture<?>[] shopsToSaveFuture = plugin.getShopManager().getAllShops().stream().filter(Shop::isDirty)
-            .map(Shop::update)
-            .toArray(CompletableFuture[]::new);
-    saveTask = CompletableFuture.allOf(shopsToSaveFuture)
-            .thenAcceptAsync((v)->{
-              if(shopsToSaveFuture.length != 0) {
-                Log.debug("Saved " + shopsToSaveFuture.length + " shops in background.");
+    saveTask = plugin.getShopManager().saveDirtyShops()
+            .thenAcceptAsync((saved)->{
+              if(saved != 0) {
+                Log.debug("Saved " + saved + " shops in background.");
               }
             }, QuickExecutor.getShopSaveExecutor())
             .exceptionally(e->{
@@ -1,41 +1,201 @@
 package com.ghostchu.quickshop.watcher;
 
 import com.ghostchu.quickshop.QuickShop;
+import com.ghostchu.quickshop.api.localization.text.ProxiedLocale;
 import com.ghostchu.quickshop.api.shop.Shop;
+import com.ghostchu.quickshop.util.Util;
 import com.ghostchu.quickshop.util.logger.Log;
+import com.ghostchu.quickshop.util.paste.item.SubPasteItem;
+import com.ghostchu.quickshop.util.paste.util.HTMLTable;
+import com.ghostchu.simplereloadlib.ReloadResult;
+import com.ghostchu.simplereloadlib.ReloadStatus;
+import com.ghostchu.simplereloadlib.Reloadable;
+import com.google.common.base.Equivalence;
 import com.tcoded.folialib.wrapper.task.WrappedTask;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
 
-import java.time.Instant;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
-public class SignUpdateWatcher implements Runnable {
-
-  private final Queue<Shop> signUpdateQueue = new LinkedList<>();
+/**
+ * Coalesces the sign updates of shops and applies them on the region thread that owns the shop,
+ * within a per-tick time budget.
+ * <p>
+ * The schedules of the same shop are merged until the update dispatched, so a hopper that keep
+ * feeding a shop only costs one update per dispatch. The dispatcher runs async every tick, it
+ * resolves the locales off-thread and posts the updates of each chunk to its region thread. Each
+ * region thread spends at most the tick budget on sign updates, the updates over budget are
+ * deferred to the next tick.
+ */
+public class SignUpdateWatcher implements Runnable, Reloadable, SubPasteItem {
 
+  private static final int MIN_DISPATCH = 8;
+  private final QuickShop plugin;
+  private final Map<Object, PendingUpdate> pending = new ConcurrentHashMap<>();
+  private final Queue<Object> order = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<TickBudget> budgets = ThreadLocal.withInitial(TickBudget::new);
+  private final LongAdder scheduled = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder applied = new LongAdder();
+  private final LongAdder deferred = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder totalLatencyNanos = new LongAdder();
+  private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+  private volatile long tickBudgetNanos;
+  // Estimated cost of one update, only used to limit how many updates dispatched per tick
+  private volatile long averageApplyNanos = TimeUnit.MICROSECONDS.toNanos(200);
+  private volatile long generation;
   private WrappedTask task = null;
 
+  public SignUpdateWatcher(@NotNull final QuickShop plugin) {
+
+    this.plugin = plugin;
+    plugin.getReloadManager().register(this);
+    plugin.getPasteManager().register(plugin.getJavaPlugin(), this);
+    init();
+  }
+
+  private void init() {
+
+    this.tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, plugin.getConfig().getInt("shop.sign-update.tick-budget-ms", 5)));
+  }
+
+  @Override
+  public ReloadResult reloadModule() {
+
+    init();
+    return ReloadResult.builder().status(ReloadStatus.SUCCESS).build();
+  }
+
+  @NotNull
+  private static Object keyOf(@NotNull final Shop shop) {
+
+    final long shopId = shop.getShopId();
+    // Shops not saved yet have no id, Shop#equals compares the mutable fields so use the identity
+    return shopId > 0? shopId : Equivalence.identity().wrap(shop);
+  }
+
   @Override
   public void run() {
 
-    final Instant startTime = Instant.now();
-    final Instant endTime = startTime.plusMillis(50);
-    Shop shop = signUpdateQueue.poll();
-    while(shop != null && !Instant.now().isAfter(endTime)) {
-      shop.setSignText(QuickShop.getInstance().text().findRelativeLanguages(shop.getOwner(), false));
-      shop = signUpdateQueue.poll();
+    final long currentGeneration = ++generation;
+    final long dispatchLimit = Math.max(MIN_DISPATCH, tickBudgetNanos / Math.max(1, averageApplyNanos));
+    final Map<Location, List<PendingUpdate>> batches = new HashMap<>();
+    int dispatched = 0;
+    Object key;
+    while(dispatched < dispatchLimit && (key = order.poll()) != null) {
+      final PendingUpdate update = pending.remove(key);
+      if(update == null) {
+        continue;
+      }
+      final Location location = update.shop.getLocation();
+      final World world = location.getWorld();
+      if(world == null) {
+        continue;
+      }
+      if(update.locale == null) {
+        update.locale = plugin.text().findRelativeLanguages(update.shop.getOwner(), false);
+      }
+      final Location chunkLocation = new Location(world, location.getBlockX() >> 4 << 4, 0, location.getBlockZ() >> 4 << 4);
+      batches.computeIfAbsent(chunkLocation, k->new ArrayList<>()).add(update);
+      dispatched++;
+    }
+    for(final Map.Entry<Location, List<PendingUpdate>> batch : batches.entrySet()) {
+      Util.regionThread(batch.getKey(), ()->apply(batch.getValue(), currentGeneration));
+    }
+  }
+
+  private void apply(@NotNull final List<PendingUpdate> updates, final long dispatchGeneration) {
+
+    final TickBudget budget = budgets.get();
+    if(budget.generation != dispatchGeneration) {
+      budget.generation = dispatchGeneration;
+      budget.usedNanos = 0;
+    }
+    for(final PendingUpdate update : updates) {
+      if(budget.usedNanos >= tickBudgetNanos) {
+        deferred.increment();
+        requeue(update);
+        continue;
+      }
+      final long startAt = System.nanoTime();
+      try {
+        if(update.shop.isLoaded()) {
+          update.shop.setSignText(update.locale);
+        }
+        applied.increment();
+      } catch(Exception e) {
+        failed.increment();
+        Log.debug("Failed to update the sign of shop " + update.shop + ": " + e.getMessage());
+      }
+      final long finishAt = System.nanoTime();
+      final long cost = finishAt - startAt;
+      budget.usedNanos += cost;
+      averageApplyNanos += (cost - averageApplyNanos) >> 4;
+      final long latency = finishAt - update.scheduledAt;
+      totalLatencyNanos.add(latency);
+      maxLatencyNanos.accumulate(latency);
+    }
+  }
+
+  private void requeue(@NotNull final PendingUpdate update) {
+
+    final Object key = keyOf(update.shop);
+    final PendingUpdate existing = pending.putIfAbsent(key, update);
+    if(existing == null) {
+      order.add(key);
+    } else {
+      // Rescheduled while deferred, keep the earliest schedule time for the latency
+      existing.scheduledAt = Math.min(existing.scheduledAt, update.scheduledAt);
     }
   }
 
   public void scheduleSignUpdate(@NotNull final Shop shop) {
 
-    if(signUpdateQueue.contains(shop)) {
-      return; // Ignore if schedule too frequently
+    scheduled.increment();
+    final Object key = keyOf(shop);
+    if(pending.putIfAbsent(key, new PendingUpdate(shop, System.nanoTime())) != null) {
+      coalesced.increment(); // Ignore if schedule too frequently
+      return;
     }
-    signUpdateQueue.add(shop);
+    order.add(key);
+  }
+
+  /**
+   * Gets the count of the shops waiting for sign update.
+   *
+   * @return The backlog size
+   */
+  public int getBacklog() {
+
+    return pending.size();
+  }
+
+  /**
+   * Gets the average latency between the sign update scheduled and applied.
+   *
+   * @return The average latency in milliseconds
+   */
+  public double getAverageLatencyMillis() {
+
+    final long count = applied.sum() + failed.sum();
+    return count == 0? 0 : totalLatencyNanos.sum() / (double)count / 1_000_000;
   }
 
+  public double getMaxLatencyMillis() {
+
+    return maxLatencyNanos.get() / 1_000_000d;
+  }
 
   public void start(final int i, final int i2) {
 
@@ -52,4 +212,46 @@ public class SignUpdateWatcher implements Runnable {
       Log.debug("Task already cancelled " + ex.getMessage());
     }
   }
+
+  @Override
+  public @NotNull String genBody() {
+
+    final HTMLTable table = new HTMLTable(2, true);
+    table.insert("Backlog", String.valueOf(getBacklog()));
+    table.insert("Scheduled", String.valueOf(scheduled.sum()));
+    table.insert("Coalesced", String.valueOf(coalesced.sum()));
+    table.insert("Applied", String.valueOf(applied.sum()));
+    table.insert("Deferred (Over Budget)", String.valueOf(deferred.sum()));
+    table.insert("Failed", String.valueOf(failed.sum()));
+    table.insert("Average Latency", String.format("%.2f", getAverageLatencyMillis()) + "ms");
+    table.insert("Max Latency", String.format("%.2f", getMaxLatencyMillis()) + "ms");
+    table.insert("Average Update Cost", String.format("%.3f", averageApplyNanos / 1_000_000d) + "ms");
+    table.insert("Tick Budget", TimeUnit.NANOSECONDS.toMillis(tickBudgetNanos) + "ms");
+    return table.render();
+  }
+
+  @Override
+  public @NotNull String getTitle() {
+
+    return "Sign Update Watcher";
+  }
+
+  private static class PendingUpdate {
+
+    private final Shop shop;
+    private volatile long scheduledAt;
+    private ProxiedLocale locale;
+
+    private PendingUpdate(@NotNull final Shop shop, final long scheduledAt) {
+
+      this.shop = shop;
+      this.scheduledAt = scheduledAt;
+    }
+  }
+
+  private static class TickBudget {
+
+    private long generation = -1;
+    private long usedNanos;
+  }
 }